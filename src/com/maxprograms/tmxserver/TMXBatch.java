@@ -0,0 +1,508 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.maxprograms.languages.RegistryParser;
+import com.maxprograms.tmxserver.models.Language;
+import com.maxprograms.tmxserver.tmx.CleanStore;
+import com.maxprograms.tmxserver.tmx.CountStore;
+import com.maxprograms.tmxserver.tmx.MaintenanceTasks;
+import com.maxprograms.tmxserver.tmx.MergeStore;
+import com.maxprograms.tmxserver.tmx.SimpleStore;
+import com.maxprograms.tmxserver.tmx.SplitStore;
+import com.maxprograms.tmxserver.tmx.TMXCleaner;
+import com.maxprograms.tmxserver.tmx.TMXReader;
+import com.maxprograms.tmxserver.tmx.TmxUtils;
+import com.maxprograms.tmxserver.utils.TextUtils;
+import com.maxprograms.tmxvalidation.TMXValidator;
+import com.maxprograms.xml.Element;
+
+public class TMXBatch {
+
+	private static Logger logger = System.getLogger(TMXBatch.class.getName());
+
+	private static final List<String> TASKS = List.of("validate", "characters", "clean", "process", "split", "merge",
+			"export");
+
+	private String task;
+	private File output;
+	private File report;
+	private int threads;
+	private int parts;
+	private int indentation;
+	private String format;
+	private boolean tags;
+	private boolean spaces;
+	private boolean untranslated;
+	private boolean sameAsSource;
+	private boolean duplicates;
+	private boolean consolidate;
+	private Language srcLang;
+	private Map<String, String> renames;
+	private Map<Language, Language> languages;
+	private List<File> files;
+	private Map<File, String> names;
+
+	public TMXBatch() {
+		threads = Runtime.getRuntime().availableProcessors();
+		parts = 2;
+		indentation = 2;
+		format = "csv";
+		renames = new HashMap<>();
+		languages = new HashMap<>();
+		files = new ArrayList<>();
+		names = new HashMap<>();
+	}
+
+	public static void main(String[] args) {
+		TMXBatch batch = new TMXBatch();
+		try {
+			batch.parseArguments(args);
+		} catch (IOException | IllegalArgumentException e) {
+			logger.log(Level.ERROR, e.getMessage());
+			help();
+			System.exit(2);
+		}
+		System.exit(batch.run());
+	}
+
+	private static void help() {
+		String help = """
+				Usage:
+
+				   java --module-path lib -m tmxserver/com.maxprograms.tmxserver.TMXBatch -task <task> [options] <file or folder>...
+
+				Tasks:
+
+				   validate     Validate each file against the TMX DTD
+				   characters   Fix invalid characters and entities in place
+				   clean        Stream each file to -output applying the cleanup flags
+				   process      Load each file, run the maintenance flags and save it to -output
+				   split        Split each file into -parts files in -output
+				   merge        Merge all files into the -output file
+				   export       Export each file to -output as -format csv or xlsx
+
+				Options:
+
+				   -output <folder|file>   Output folder (output file for merge)
+				   -threads <n>            Files processed in parallel (default: available processors)
+				   -report <file>          Write per-file results as JSON
+				   -indentation <n>        Indentation of written files (default: 2)
+				   -parts <n>              Number of parts for split (default: 2)
+				   -format <csv|xlsx>      Export format (default: csv)
+				   -srcLang <code>         Source language for -untranslated, -sameAsSource and -consolidate
+				   -changeLanguage <old>:<new>  Relabel a language (clean and process, repeatable)
+				   -tags -spaces -untranslated -sameAsSource -duplicates   Cleanup flags (clean and process)
+				   -consolidate            Consolidate units (process only)
+
+				Folders are searched recursively for .tmx files; results keep their path relative to the folder.
+				Exit status is 0 when all files succeed, 1 when any file fails and 2 for usage errors.
+				""";
+		logger.log(Level.INFO, help);
+	}
+
+	private void parseArguments(String[] args) throws IOException {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			switch (arg) {
+				case "-task":
+					task = value(args, ++i, arg);
+					break;
+				case "-output":
+					output = new File(value(args, ++i, arg));
+					break;
+				case "-report":
+					report = new File(value(args, ++i, arg));
+					break;
+				case "-threads":
+					threads = Integer.parseInt(value(args, ++i, arg));
+					break;
+				case "-parts":
+					parts = Integer.parseInt(value(args, ++i, arg));
+					break;
+				case "-indentation":
+					indentation = Integer.parseInt(value(args, ++i, arg));
+					break;
+				case "-format":
+					format = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+					break;
+				case "-srcLang":
+					srcLang = new Language(value(args, ++i, arg), "");
+					break;
+				case "-changeLanguage":
+					String[] pair = value(args, ++i, arg).split(":");
+					if (pair.length != 2) {
+						throw new IOException("Invalid language change: " + args[i]);
+					}
+					renames.put(pair[0], pair[1]);
+					break;
+				case "-tags":
+					tags = true;
+					break;
+				case "-spaces":
+					spaces = true;
+					break;
+				case "-untranslated":
+					untranslated = true;
+					break;
+				case "-sameAsSource":
+					sameAsSource = true;
+					break;
+				case "-duplicates":
+					duplicates = true;
+					break;
+				case "-consolidate":
+					consolidate = true;
+					break;
+				default:
+					if (arg.startsWith("-")) {
+						throw new IOException("Unknown option: " + arg);
+					}
+					addFiles(new File(arg));
+			}
+		}
+		if (task == null || !TASKS.contains(task)) {
+			throw new IOException("Missing or unknown task");
+		}
+		if (files.isEmpty()) {
+			throw new IOException("No TMX files to process");
+		}
+		if (threads < 1 || parts < 1 || indentation < 0) {
+			throw new IOException("Invalid numeric option");
+		}
+		boolean needsOutput = !task.equals("validate") && !task.equals("characters");
+		if (needsOutput && output == null) {
+			throw new IOException("Missing -output");
+		}
+		if (needsOutput && !task.equals("merge")) {
+			checkNames();
+			Files.createDirectories(output.toPath());
+		}
+		if (task.equals("export") && !format.equals("csv") && !format.equals("xlsx")) {
+			throw new IOException("Unknown export format: " + format);
+		}
+		if (srcLang == null && (untranslated || sameAsSource || consolidate)) {
+			throw new IOException("Missing -srcLang");
+		}
+		if (task.equals("clean") && consolidate) {
+			throw new IOException("-consolidate requires the process task");
+		}
+		RegistryParser registry = new RegistryParser();
+		if (srcLang != null) {
+			srcLang = new Language(srcLang.getCode(), registry.getTagDescription(srcLang.getCode()));
+		}
+		Iterator<Map.Entry<String, String>> it = renames.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, String> entry = it.next();
+			languages.put(new Language(entry.getKey(), registry.getTagDescription(entry.getKey())),
+					new Language(entry.getValue(), registry.getTagDescription(entry.getValue())));
+		}
+	}
+
+	private static String value(String[] args, int i, String option) throws IOException {
+		if (i >= args.length) {
+			throw new IOException("Missing value for " + option);
+		}
+		return args[i];
+	}
+
+	private void addFiles(File file) throws IOException {
+		if (!file.exists()) {
+			throw new IOException("File does not exist: " + file.getAbsolutePath());
+		}
+		if (file.isDirectory()) {
+			try (Stream<Path> stream = Files.walk(file.toPath())) {
+				List<Path> found = stream.filter(
+						p -> Files.isRegularFile(p) && p.toString().toLowerCase(Locale.ROOT).endsWith(".tmx"))
+						.sorted().collect(Collectors.toList());
+				Iterator<Path> it = found.iterator();
+				while (it.hasNext()) {
+					Path path = it.next();
+					files.add(path.toFile());
+					names.put(path.toFile(), baseName(file.toPath().relativize(path).toString()));
+				}
+			}
+		} else {
+			files.add(file);
+			names.put(file, baseName(file.getName()));
+		}
+	}
+
+	private static String baseName(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot > name.lastIndexOf(File.separatorChar) ? name.substring(0, dot) : name;
+	}
+
+	private void checkNames() throws IOException {
+		Map<String, File> used = new HashMap<>();
+		Iterator<File> it = files.iterator();
+		while (it.hasNext()) {
+			File file = it.next();
+			// compare ignoring case, output folders may be on case-insensitive file systems
+			File previous = used.put(names.get(file).toLowerCase(Locale.ROOT), file);
+			if (previous != null) {
+				throw new IOException("Files " + previous.getPath() + " and " + file.getPath()
+						+ " would be written to the same output file");
+			}
+		}
+	}
+
+	public int run() {
+		long start = System.currentTimeMillis();
+		List<JSONObject> results = new ArrayList<>();
+		if (task.equals("merge")) {
+			results.add(execute(null));
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+			List<Future<JSONObject>> futures = new ArrayList<>();
+			Iterator<File> it = files.iterator();
+			while (it.hasNext()) {
+				File file = it.next();
+				futures.add(pool.submit(() -> execute(file)));
+			}
+			pool.shutdown();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					results.add(failure(files.get(i), e));
+				} catch (ExecutionException e) {
+					results.add(failure(files.get(i), e));
+				}
+			}
+		}
+		int failed = 0;
+		JSONArray array = new JSONArray();
+		Iterator<JSONObject> it = results.iterator();
+		while (it.hasNext()) {
+			JSONObject result = it.next();
+			if (!Constants.SUCCESS.equals(result.getString(Constants.STATUS))) {
+				failed++;
+			}
+			array.put(result);
+		}
+		long time = System.currentTimeMillis() - start;
+		int total = results.size();
+		int errors = failed;
+		logger.log(Level.INFO, () -> "Processed " + total + " file(s) in " + time + " ms, " + errors + " failed");
+		if (report != null) {
+			JSONObject json = new JSONObject();
+			json.put("task", task);
+			json.put("time", time);
+			json.put("failed", failed);
+			json.put("files", array);
+			try (FileOutputStream out = new FileOutputStream(report)) {
+				out.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				logger.log(Level.ERROR, "Error writing report", e);
+				return 1;
+			}
+		}
+		return failed == 0 ? 0 : 1;
+	}
+
+	private JSONObject execute(File file) {
+		long start = System.currentTimeMillis();
+		JSONObject result = new JSONObject();
+		result.put("file", file == null ? output.getAbsolutePath() : file.getAbsolutePath());
+		try {
+			switch (task) {
+				case "validate":
+					new TMXValidator().validate(file);
+					break;
+				case "characters":
+					TMXCleaner.clean(file.getAbsolutePath());
+					break;
+				case "clean":
+					clean(file, result);
+					break;
+				case "process":
+					process(file, result);
+					break;
+				case "split":
+					split(file, result);
+					break;
+				case "merge":
+					merge(result);
+					break;
+				default:
+					export(file, result);
+			}
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+		}
+		long time = System.currentTimeMillis() - start;
+		result.put("time", time);
+		if (Constants.SUCCESS.equals(result.getString(Constants.STATUS))) {
+			logger.log(Level.INFO, () -> result.getString("file") + ": " + time + " ms");
+		} else {
+			logger.log(Level.ERROR, () -> result.getString("file") + ": " + result.getString(Constants.REASON));
+		}
+		return result;
+	}
+
+	private static JSONObject failure(File file, Exception e) {
+		JSONObject result = new JSONObject();
+		result.put("file", file.getAbsolutePath());
+		result.put(Constants.STATUS, Constants.ERROR);
+		result.put(Constants.REASON, e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+		return result;
+	}
+
+	private File target(File file, String extension) throws IOException {
+		File target = new File(output, names.get(file) + extension);
+		if (target.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+			throw new IOException("Output file must be different from input file");
+		}
+		Files.createDirectories(target.getParentFile().toPath());
+		return target;
+	}
+
+	private void clean(File file, JSONObject result) throws Exception {
+		MaintenanceTasks tasks = new MaintenanceTasks(tags, spaces, untranslated, duplicates, false,
+				srcLang != null ? srcLang.getCode() : null);
+		File target = target(file, ".tmx");
+		CleanStore store = new CleanStore(target, tasks, sameAsSource, renames);
+		store.setIndentation(indentation);
+		boolean done = false;
+		try {
+			new TMXReader(store).parse(file);
+			done = true;
+		} finally {
+			if (done) {
+				store.close();
+			} else {
+				store.abort();
+			}
+		}
+		result.put("units", store.getProcessed());
+		result.put("written", store.getCount());
+		result.put("discarded", store.getDiscarded());
+	}
+
+	private void process(File file, JSONObject result) throws Exception {
+		SimpleStore store = load(file);
+		long units = store.getCount();
+		Iterator<Map.Entry<Language, Language>> it = languages.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Language, Language> entry = it.next();
+			if (store.getLanguages().contains(entry.getKey().getCode())) {
+				store.changeLanguage(entry.getKey(), entry.getValue());
+			}
+		}
+		if (sameAsSource) {
+			store.removeSameAsSource(srcLang);
+		}
+		if (tags || spaces || untranslated || duplicates || consolidate) {
+			store.processTasks(new MaintenanceTasks(tags, spaces, untranslated, duplicates, consolidate,
+					srcLang != null ? srcLang.getCode() : null));
+		}
+		store.setIndentation(indentation);
+		store.writeFile(target(file, ".tmx"));
+		result.put("units", units);
+		result.put("written", store.getCount());
+	}
+
+	private void split(File file, JSONObject result) throws Exception {
+		CountStore counter = new CountStore();
+		new TMXReader(counter).parse(file);
+		long total = counter.getCount();
+		long limit = total / parts;
+		if (total % parts != 0) {
+			limit++;
+		}
+		SplitStore store = new SplitStore(target(file, ".tmx"), limit);
+		store.setIndentation(indentation);
+		new TMXReader(store).parse(file);
+		store.close();
+		result.put("units", total);
+	}
+
+	private void merge(JSONObject result) throws Exception {
+		try (FileOutputStream out = new FileOutputStream(output)) {
+			Element header = new Element("header");
+			header.setAttribute("creationdate", TmxUtils.tmxDate());
+			header.setAttribute("creationtool", Constants.APPNAME);
+			header.setAttribute("creationtoolversion", Constants.VERSION);
+			header.setAttribute("datatype", "xml");
+			header.setAttribute("segtype", "block");
+			header.setAttribute("adminlang", "en");
+			header.setAttribute("o-tmf", "unknown");
+			header.setAttribute("srclang", "*all*");
+			out.write(("<?xml version=\"1.0\" ?>\r\n"
+					+ "<!DOCTYPE tmx PUBLIC \"-//LISA OSCAR:1998//DTD for Translation Memory eXchange//EN\" \"tmx14.dtd\">\r\n"
+					+ "<tmx version=\"1.4\">\n").getBytes(StandardCharsets.UTF_8));
+			out.write((TextUtils.padding(1, indentation) + header.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+			out.write((TextUtils.padding(1, indentation) + "<body>\n").getBytes(StandardCharsets.UTF_8));
+			MergeStore store = new MergeStore(out);
+			store.setIndentation(indentation);
+			TMXReader reader = new TMXReader(store);
+			Iterator<File> it = files.iterator();
+			while (it.hasNext()) {
+				File file = it.next();
+				if (file.getAbsoluteFile().equals(output.getAbsoluteFile())) {
+					throw new IOException("Output file must be different from input files");
+				}
+				reader.parse(file);
+			}
+			out.write((TextUtils.padding(1, indentation) + "</body>\n").getBytes(StandardCharsets.UTF_8));
+			out.write("</tmx>".getBytes(StandardCharsets.UTF_8));
+			result.put("files", files.size());
+			result.put("units", store.getCount());
+		}
+	}
+
+	private void export(File file, JSONObject result) throws Exception {
+		SimpleStore store = load(file);
+		if (format.equals("xlsx")) {
+			store.exportExcel(target(file, ".xlsx").getAbsolutePath());
+		} else {
+			store.exportDelimited(target(file, ".csv").getAbsolutePath());
+		}
+		result.put("units", store.getExported());
+	}
+
+	private static SimpleStore load(File file) throws Exception {
+		SimpleStore store = new SimpleStore();
+		new TMXReader(store).parse(file);
+		store.commit();
+		return store;
+	}
+}
@@ -13,26 +13,36 @@
 package com.maxprograms.tmxserver;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.System.Logger;
 import java.lang.System.Logger.Level;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.xml.parsers.ParserConfigurationException;
+
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.xml.sax.SAXException;
 
 import com.maxprograms.tmxserver.models.Language;
 import com.maxprograms.tmxserver.models.TUnit;
+import com.maxprograms.tmxserver.tmx.TmxUtils;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -46,6 +56,8 @@ public class TMXServer implements HttpHandler {
 	public TMXServer(Integer port) throws IOException {
 		server = HttpServer.create(new InetSocketAddress(port), 0);
 		server.createContext("/TMXServer", this);
+		server.createContext("/tags", new TagGlyphHandler());
+		TmxUtils.setGlyphsURL("http://127.0.0.1:" + port + "/tags/");
 		server.setExecutor(new ThreadPoolExecutor(3, 10, 20, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100)));
 		service = new TMXService();
 	}
@@ -123,7 +135,15 @@ public class TMXServer implements HttpHandler {
 					response = getLanguages();
 					break;
 				case "getSegments":
-					response = getSegments(json);
+				case "explainSegments":
+				case "submitQuery":
+					response = getSegments(t, json, command);
+					break;
+				case "getQueryPage":
+					response = getQueryPage(t, json);
+					break;
+				case "cancelQuery":
+					response = service.cancelQuery(json.getString("job")).toString();
 					break;
 				case "getTuData":
 					response = getTuData(json.getString("id"));
@@ -143,6 +163,9 @@ public class TMXServer implements HttpHandler {
 				case "getCount":
 					response = getCount();
 					break;
+				case "getFilteredCount":
+					response = getFilteredCount(json);
+					break;
 				case "validateFile":
 					response = validateFile(json.getString("file"));
 					break;
@@ -164,9 +187,27 @@ public class TMXServer implements HttpHandler {
 				case "replaceText":
 					response = replaceText(json);
 					break;
+				case "batchReplace":
+					response = service.batchReplace(json.getJSONArray("rules")).toString();
+					break;
+				case "batchReplaceResults":
+					response = service.getBatchReplaceResults().toString();
+					break;
 				case "removeSpaces":
 					response = removeSpaces();
 					break;
+				case "findNearDuplicates":
+					response = findNearDuplicates(json);
+					break;
+				case "nearDuplicatesResults":
+					response = service.getNearDuplicates(json.has("limit") ? json.getInt("limit") : 100).toString();
+					break;
+				case "getStatistics":
+					response = service.getStatistics().toString();
+					break;
+				case "statisticsResults":
+					response = service.getStatisticsResults().toString();
+					break;
 				case "removeDuplicates":
 					response = removeDuplicates();
 					break;
@@ -224,6 +265,12 @@ public class TMXServer implements HttpHandler {
 				case "getMergeProgress":
 					response = getMergeProgress();
 					break;
+				case "cleanFile":
+					response = cleanFile(json);
+					break;
+				case "getCleanFileProgress":
+					response = getCleanFileProgress();
+					break;
 				case "getCharsets":
 					response = getCharsets();
 					break;
@@ -261,6 +308,9 @@ public class TMXServer implements HttpHandler {
 					unknown.put("received", json.toString());
 					response = unknown.toString();
 			}
+			if (response == null) {
+				return;
+			}
 			t.getResponseHeaders().add("content-type", "application/json; charset=utf-8");
 			byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
 			t.sendResponseHeaders(200, bytes.length);
@@ -372,6 +422,14 @@ public class TMXServer implements HttpHandler {
 		return service.mergeFiles(json.getString("merged"), files).toString();
 	}
 
+	private String cleanFile(JSONObject json) {
+		return service.cleanFile(json).toString();
+	}
+
+	private String getCleanFileProgress() {
+		return service.getCleanFileProgress().toString();
+	}
+
 	private String getSplitProgress() {
 		return service.getSplitProgress().toString();
 	}
@@ -527,6 +585,10 @@ public class TMXServer implements HttpHandler {
 			if (json.has("regExp")) {
 				regExp = json.getBoolean("regExp");
 			}
+			if (json.has("preview") && json.getBoolean("preview")) {
+				int limit = json.has("limit") ? json.getInt("limit") : 20;
+				return service.previewReplace(search, replace, language, regExp, limit).toString();
+			}
 			return service.replaceText(search, replace, language, regExp).toString();
 		} catch (IOException e) {
 			logger.log(Level.ERROR, e);
@@ -537,6 +599,20 @@ public class TMXServer implements HttpHandler {
 		}
 	}
 
+	private String findNearDuplicates(JSONObject json) {
+		try {
+			Language srcLang = service.getLanguage(json.getString("srcLang"));
+			double threshold = json.has("threshold") ? json.getDouble("threshold") : 0.8;
+			return service.findNearDuplicates(srcLang, threshold).toString();
+		} catch (IOException e) {
+			logger.log(Level.ERROR, e);
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+			return result.toString();
+		}
+	}
+
 	private String removeUntranslated(String srcLang) {
 		try {
 			Language lang = service.getLanguage(srcLang);
@@ -575,6 +651,47 @@ public class TMXServer implements HttpHandler {
 		return service.getCount().toString();
 	}
 
+	private String getFilteredCount(JSONObject json) {
+		try {
+			String filterText = null;
+			if (json.has("filterText")) {
+				filterText = json.getString("filterText");
+			}
+			Language filterLanguage = null;
+			if (json.has("filterLanguage")) {
+				filterLanguage = service.getLanguage(json.getString("filterLanguage"));
+			}
+			boolean caseSensitiveFilter = false;
+			if (json.has("caseSensitiveFilter")) {
+				caseSensitiveFilter = json.getBoolean("caseSensitiveFilter");
+			}
+			boolean ignoreAccents = false;
+			if (json.has("ignoreAccents")) {
+				ignoreAccents = json.getBoolean("ignoreAccents");
+			}
+			boolean filterUntranslated = false;
+			if (json.has("filterUntranslated")) {
+				filterUntranslated = json.getBoolean("filterUntranslated");
+			}
+			boolean regExp = false;
+			if (json.has("regExp")) {
+				regExp = json.getBoolean("regExp");
+			}
+			Language filterSrcLanguage = null;
+			if (json.has("filterSrcLanguage")) {
+				filterSrcLanguage = service.getLanguage(json.getString("filterSrcLanguage"));
+			}
+			return service.getFilteredCount(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+					filterUntranslated, regExp, filterSrcLanguage).toString();
+		} catch (IOException e) {
+			logger.log(Level.ERROR, e);
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+			return result.toString();
+		}
+	}
+
 	private String getProcessingProgress() {
 		return service.getProcessingProgress().toString();
 	}
@@ -605,8 +722,7 @@ public class TMXServer implements HttpHandler {
 		return service.saveData(json.getString("id"), json.getString("lang"), json.getString("data")).toString();
 	}
 
-	private String getSegments(JSONObject json) {
-		JSONObject result = new JSONObject();
+	private String getSegments(HttpExchange t, JSONObject json, String command) {
 		try {
 			String filterText = null;
 			if (json.has("filterText")) {
@@ -640,34 +756,83 @@ public class TMXServer implements HttpHandler {
 			if (json.has("caseSensitiveFilter")) {
 				caseSensitiveFilter = json.getBoolean("caseSensitiveFilter");
 			}
-			JSONObject segments = service.getData(json.getInt("start"), json.getInt("count"), filterText,
-					filterLanguage, caseSensitiveFilter, filterUntranslated, regExp, filterSrcLanguage, sortLanguage,
-					ascending);
-			result.put(Constants.STATUS, segments.getString(Constants.STATUS));
-
-			if (segments.getString(Constants.STATUS).equals(Constants.SUCCESS)) {
-				JSONArray units = segments.getJSONArray("units");
-
-				List<Language> fileLanguages = new ArrayList<>();
-				JSONArray langs = service.getLanguages().getJSONArray("languages");
-				for (int i = 0; i < langs.length(); i++) {
-					fileLanguages.add(new Language(langs.getJSONObject(i)));
-				}
+			boolean ignoreAccents = false;
+			if (json.has("ignoreAccents")) {
+				ignoreAccents = json.getBoolean("ignoreAccents");
+			}
+			int start = json.getInt("start");
+			int count = json.getInt("count");
+			if (command.equals("explainSegments")) {
+				return service.explainData(start, count, filterText, filterLanguage, caseSensitiveFilter,
+						ignoreAccents, filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending)
+						.toString(2);
+			}
+			if (command.equals("submitQuery")) {
+				List<TUnit> units = new ArrayList<>();
+				JSONObject page = service.submitQuery(start, count, filterText, filterLanguage, caseSensitiveFilter,
+						ignoreAccents, filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending, units);
+				return writeSegments(t, page, units);
+			}
+			List<TUnit> units = service.getUnits(start, count, filterText, filterLanguage, caseSensitiveFilter,
+					ignoreAccents, filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+			JSONObject page = new JSONObject();
+			page.put(Constants.STATUS, Constants.SUCCESS);
+			return writeSegments(t, page, units);
+		} catch (Exception e) {
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+			return result.toString(2);
+		}
+	}
 
-				JSONArray array = new JSONArray();
-				for (int i = 0; i < units.length(); i++) {
-					TUnit unit = new TUnit(units.getJSONObject(i));
-					array.put(unit.toHTML(fileLanguages));
-				}
-				result.put("units", array);
-			} else {
-				result.put(Constants.REASON, segments.getString(Constants.REASON));
+	private String writeSegments(HttpExchange t, JSONObject page, List<TUnit> units)
+			throws IOException, SAXException, ParserConfigurationException {
+		if (!page.getString(Constants.STATUS).equals(Constants.SUCCESS)) {
+			return page.toString();
+		}
+		List<Language> fileLanguages = service.getFileLanguages();
+		List<String> rows = new ArrayList<>();
+		Iterator<TUnit> it = units.iterator();
+		while (it.hasNext()) {
+			rows.add(it.next().toHTML(fileLanguages));
+		}
+		t.getResponseHeaders().add("content-type", "application/json; charset=utf-8");
+		t.sendResponseHeaders(200, 0);
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(t.getResponseBody(), StandardCharsets.UTF_8))) {
+			JSONWriter json = new JSONWriter(writer);
+			json.object();
+			Iterator<String> keys = page.keys();
+			while (keys.hasNext()) {
+				String key = keys.next();
+				json.key(key).value(page.get(key));
+			}
+			json.key("units").array();
+			Iterator<String> rt = rows.iterator();
+			while (rt.hasNext()) {
+				json.value(rt.next());
 			}
+			json.endArray();
+			json.endObject();
+		} catch (IOException | JSONException e) {
+			// headers were already sent; the client sees a broken response
+			logger.log(Level.WARNING, e);
+		}
+		return null;
+	}
+
+	private String getQueryPage(HttpExchange t, JSONObject json) {
+		try {
+			List<TUnit> units = new ArrayList<>();
+			JSONObject page = service.getQueryPage(json.getString("job"), json.getInt("start"), json.getInt("count"),
+					units);
+			return writeSegments(t, page, units);
 		} catch (Exception e) {
+			JSONObject result = new JSONObject();
 			result.put(Constants.STATUS, Constants.ERROR);
 			result.put(Constants.REASON, e.getMessage());
+			return result.toString(2);
 		}
-		return result.toString(2);
 	}
 
 	private String getLanguages() {
@@ -26,11 +26,14 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,15 +44,22 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
-import com.maxprograms.languages.LanguageUtils;
 import com.maxprograms.languages.RegistryParser;
 import com.maxprograms.tmxserver.excel.ExcelReader;
 import com.maxprograms.tmxserver.excel.Sheet;
 import com.maxprograms.tmxserver.models.Language;
 import com.maxprograms.tmxserver.models.TUnit;
+import com.maxprograms.tmxserver.tmx.CleanStore;
 import com.maxprograms.tmxserver.tmx.CountStore;
+import com.maxprograms.tmxserver.tmx.FilterJob;
+import com.maxprograms.tmxserver.tmx.Glossary;
+import com.maxprograms.tmxserver.tmx.MaintenanceTasks;
 import com.maxprograms.tmxserver.tmx.MapDBStore;
 import com.maxprograms.tmxserver.tmx.MergeStore;
+import com.maxprograms.tmxserver.tmx.NearDuplicates;
+import com.maxprograms.tmxserver.tmx.Statistics;
+import com.maxprograms.tmxserver.tmx.ParallelFilter;
+import com.maxprograms.tmxserver.tmx.QueryProfile;
 import com.maxprograms.tmxserver.tmx.SimpleStore;
 import com.maxprograms.tmxserver.tmx.SplitStore;
 import com.maxprograms.tmxserver.tmx.StoreInterface;
@@ -72,9 +82,17 @@ public class TMXService {
 
 	private long threshold = 100l;
 
+	private static final int MAXJOBS = 8;
+	private static final long FIRSTPAGEWAIT = 500l;
+
 	protected StoreInterface store;
 	protected File currentFile;
 	private RegistryParser registry;
+	private Set<String> languageCodes;
+	private List<Language> fileLanguages;
+	private Glossary glossary;
+	private NearDuplicates nearDuplicates;
+	private Statistics statistics;
 	protected int indentation;
 
 	protected boolean parsing;
@@ -95,6 +113,9 @@ public class TMXService {
 	protected boolean cleaning;
 	protected String cleaningError;
 
+	protected boolean cleaningFile;
+	protected String cleanFileError;
+
 	protected boolean exporting;
 	protected String exportingError;
 
@@ -104,6 +125,9 @@ public class TMXService {
 	protected CountStore countStore;
 	protected SplitStore splitStore;
 	protected MergeStore mergeStore;
+	private CleanStore cleanStore;
+
+	private Map<String, FilterJob> jobs = new LinkedHashMap<>();
 
 	public boolean isOpen() {
 		return store != null;
@@ -153,6 +177,15 @@ public class TMXService {
 						threshold = 100l;
 					}
 				}
+				if (json.has("regexSegmentTimeout")) {
+					TextUtils.setSegmentTimeout(json.optLong("regexSegmentTimeout", 1000l));
+				}
+				if (json.has("regexQueryTimeout")) {
+					TextUtils.setQueryTimeout(json.optLong("regexQueryTimeout", 60000l));
+				}
+				if (json.has("threads")) {
+					ParallelFilter.setParallelism(json.optInt("threads", 0));
+				}
 			}
 		}
 	}
@@ -171,10 +204,12 @@ public class TMXService {
 				removeFile(tmp);
 			}
 			Files.createDirectory(tmp.toPath());
+			cancelQueries();
 			if (store != null) {
 				store.close();
 				store = null;
 			}
+			statistics = null;
 			currentFile = new File(fileName);
 			store = new SimpleStore();
 			long size = currentFile.length();
@@ -216,29 +251,175 @@ public class TMXService {
 		return result;
 	}
 
-	public JSONObject getData(int start, int count, String filterText, Language filterLanguage,
-			boolean caseSensitiveFilter, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
-			Language sortLanguage, boolean ascending) {
+	public List<TUnit> getUnits(int start, int count, String filterText, Language filterLanguage,
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending) throws IOException {
 		processing = true;
 		processingError = "";
+		try {
+			if (store == null) {
+				throw new IOException(Constants.NULLSTORE);
+			}
+			return store.getUnits(start, count, filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+					filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			processingError = e.getMessage();
+			throw e;
+		} finally {
+			processing = false;
+		}
+	}
+
+	public JSONObject submitQuery(int start, int count, String filterText, Language filterLanguage,
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending, List<TUnit> units) {
+		if (store == null) {
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, Constants.NULLSTORE);
+			return result;
+		}
+		try {
+			FilterJob job = store.submitQuery(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+					filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+			synchronized (jobs) {
+				jobs.put(job.getId(), job);
+				if (jobs.size() > MAXJOBS) {
+					String eldest = jobs.keySet().iterator().next();
+					jobs.remove(eldest).cancel();
+				}
+			}
+			job.waitFor((long) start + count, FIRSTPAGEWAIT);
+			return getQueryPage(job.getId(), start, count, units);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+			return result;
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			JSONObject result = new JSONObject();
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+			return result;
+		}
+	}
+
+	public JSONObject getQueryPage(String jobId, long start, int count, List<TUnit> units) {
 		JSONObject result = new JSONObject();
+		FilterJob job = null;
+		synchronized (jobs) {
+			job = jobs.get(jobId);
+		}
+		if (job == null || store == null) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, "Unknown query");
+			return result;
+		}
+		if (job.getError() != null) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, job.getError());
+			return result;
+		}
 		try {
-			List<TUnit> data = store.getUnits(start, count, filterText, filterLanguage, caseSensitiveFilter,
+			units.addAll(store.getUnits(job, start, count));
+			result.put("job", jobId);
+			result.put("done", job.isDone());
+			result.put("hits", job.getHitCount());
+			result.put("processed", job.getProcessed());
+			result.put("total", job.getTotal());
+			result.put("truncated", job.isTruncated());
+			result.put("timeouts", new JSONArray(job.getTimeouts()));
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject cancelQuery(String jobId) {
+		FilterJob job = null;
+		synchronized (jobs) {
+			job = jobs.remove(jobId);
+		}
+		if (job != null) {
+			job.cancel();
+		}
+		JSONObject result = new JSONObject();
+		result.put(Constants.STATUS, Constants.SUCCESS);
+		return result;
+	}
+
+	private void cancelQueries() {
+		synchronized (jobs) {
+			Iterator<FilterJob> it = jobs.values().iterator();
+			while (it.hasNext()) {
+				it.next().cancel();
+			}
+			jobs.clear();
+		}
+	}
+
+	public JSONObject getFilteredCount(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) {
+		JSONObject result = new JSONObject();
+		if (store == null) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, Constants.NULLSTORE);
+			return result;
+		}
+		try {
+			result.put("count", store.countUnits(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+					filterUntranslated, regExp, filterSrcLanguage));
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject explainData(int start, int count, String filterText, Language filterLanguage,
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending) {
+		JSONObject result = new JSONObject();
+		if (store == null) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, Constants.NULLSTORE);
+			return result;
+		}
+		try {
+			long time = System.nanoTime();
+			FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
 					filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+			QueryProfile profile = new QueryProfile();
+			job.setProfile(profile);
+			store.runQuery(job);
+			List<TUnit> data = store.getUnits(job, start, count);
+			long json = System.nanoTime();
 			JSONArray array = new JSONArray();
 			Iterator<TUnit> it = data.iterator();
 			while (it.hasNext()) {
 				array.put(it.next().toJSON());
 			}
-			result.put("units", array);
+			profile.time("json", json);
+			profile.time("total", time);
+			result.put("profile", profile.toJSON());
+			result.put("units", array.length());
+			result.put("hits", job.getHitCount());
+			result.put("total", job.getTotal());
+			result.put("truncated", job.isTruncated());
 			result.put(Constants.STATUS, Constants.SUCCESS);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.getMessage(), e);
-			processingError = e.getMessage();
 			result.put(Constants.STATUS, Constants.ERROR);
 			result.put(Constants.REASON, e.getMessage());
 		}
-		processing = false;
 		return result;
 	}
 
@@ -254,34 +435,47 @@ public class TMXService {
 			result.put(Constants.REASON, Constants.NULLSTORE);
 			return result;
 		}
-		if (registry == null) {
-			try {
-				registry = new RegistryParser();
-			} catch (IOException e) {
-				logger.log(Level.SEVERE, e.getMessage(), e);
-				result.put(Constants.STATUS, Constants.ERROR);
-				result.put(Constants.REASON, e.getMessage());
-				return result;
+		JSONArray data = new JSONArray();
+		try {
+			Iterator<Language> it = getFileLanguages().iterator();
+			while (it.hasNext()) {
+				data.put(it.next().toJSON());
 			}
-		}
-		Set<String> codes = store.getLanguages();
-		if (codes == null || codes.isEmpty()) {
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
 			result.put(Constants.STATUS, Constants.ERROR);
-			result.put(Constants.REASON, "Error getting languages from store");
+			result.put(Constants.REASON, e.getMessage());
 			return result;
 		}
-		Iterator<String> it = codes.iterator();
-		JSONArray data = new JSONArray();
-
-		while (it.hasNext()) {
-			String code = it.next();
-			data.put(new Language(code, registry.getTagDescription(code)).toJSON());
-		}
 		result.put("languages", data);
 		result.put(Constants.STATUS, Constants.SUCCESS);
 		return result;
 	}
 
+	public synchronized List<Language> getFileLanguages() throws IOException {
+		if (store == null) {
+			throw new IOException(Constants.NULLSTORE);
+		}
+		Set<String> codes = store.getLanguages();
+		if (codes == null || codes.isEmpty()) {
+			throw new IOException("Error getting languages from store");
+		}
+		if (fileLanguages == null || !codes.equals(languageCodes)) {
+			if (registry == null) {
+				registry = new RegistryParser();
+			}
+			List<Language> list = new ArrayList<>();
+			Iterator<String> it = codes.iterator();
+			while (it.hasNext()) {
+				String code = it.next();
+				list.add(new Language(code, registry.getTagDescription(code)));
+			}
+			languageCodes = new TreeSet<>(codes);
+			fileLanguages = Collections.unmodifiableList(list);
+		}
+		return fileLanguages;
+	}
+
 	public JSONObject getProcessingProgress() {
 		JSONObject result = new JSONObject();
 		if (store != null) {
@@ -318,8 +512,10 @@ public class TMXService {
 	public JSONObject closeFile() {
 		if (store != null) {
 			try {
+				cancelQueries();
 				store.close();
 				store = null;
+				statistics = null;
 				currentFile = null;
 				new Thread() {
 
@@ -551,6 +747,60 @@ public class TMXService {
 		return result;
 	}
 
+	public JSONObject previewReplace(String search, String replace, Language language, boolean regExp, int limit) {
+		JSONObject result = new JSONObject();
+		try {
+			result = store.previewReplace(search, replace, language, regExp, limit).toJSON();
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject batchReplace(JSONArray rules) {
+		JSONObject result = new JSONObject();
+		processing = true;
+		processingError = "";
+		try {
+			Glossary rulesGlossary = new Glossary();
+			for (int i = 0; i < rules.length(); i++) {
+				JSONObject rule = rules.getJSONObject(i);
+				rulesGlossary.addRule(rule.getString("search"), rule.optString("replace", ""), rule.getString("lang"));
+			}
+			glossary = rulesGlossary;
+			new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						store.batchReplace(rulesGlossary);
+					} catch (Exception e) {
+						logger.log(Level.SEVERE, e.getMessage(), e);
+						processingError = e.getMessage();
+					}
+					processing = false;
+				}
+			}.start();
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception ex) {
+			processing = false;
+			logger.log(Level.SEVERE, ex.getMessage(), ex);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, ex.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject getBatchReplaceResults() {
+		JSONObject result = new JSONObject();
+		result.put(Constants.STATUS, Constants.SUCCESS);
+		result.put("rules", glossary == null ? new JSONArray() : glossary.toJSON());
+		return result;
+	}
+
 	public JSONObject insertUnit() {
 		JSONObject result = new JSONObject();
 		try {
@@ -803,6 +1053,96 @@ public class TMXService {
 		return result;
 	}
 
+	public JSONObject findNearDuplicates(Language srcLang, double threshold) {
+		JSONObject result = new JSONObject();
+		processing = true;
+		processingError = "";
+		nearDuplicates = null;
+		try {
+			new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						nearDuplicates = store.findNearDuplicates(srcLang, threshold);
+					} catch (Exception e) {
+						logger.log(Level.SEVERE, e.getMessage(), e);
+						processingError = e.getMessage();
+					}
+					processing = false;
+				}
+			}.start();
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			processing = false;
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject getNearDuplicates(int limit) {
+		JSONObject result = new JSONObject();
+		if (nearDuplicates == null) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, "No results available");
+			return result;
+		}
+		result = nearDuplicates.toJSON(limit);
+		result.put(Constants.STATUS, Constants.SUCCESS);
+		return result;
+	}
+
+	public JSONObject getStatistics() {
+		JSONObject result = new JSONObject();
+		processing = true;
+		processingError = "";
+		statistics = null;
+		try {
+			new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						statistics = store.getStatistics();
+					} catch (Exception e) {
+						logger.log(Level.SEVERE, e.getMessage(), e);
+						processingError = e.getMessage();
+					}
+					processing = false;
+				}
+			}.start();
+			result.put(Constants.STATUS, Constants.SUCCESS);
+		} catch (Exception e) {
+			processing = false;
+			logger.log(Level.SEVERE, e.getMessage(), e);
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, e.getMessage());
+		}
+		return result;
+	}
+
+	public JSONObject getStatisticsResults() {
+		JSONObject result = new JSONObject();
+		if (statistics == null || processing) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, "No results available");
+			return result;
+		}
+		if (statistics.isDiscarded()) {
+			// the store dropped its counts; rebuild them off the HTTP thread
+			result = getStatistics();
+			if (Constants.SUCCESS.equals(result.getString(Constants.STATUS))) {
+				result.put(Constants.STATUS, Constants.PROCESSING);
+			}
+			return result;
+		}
+		result.put("languages", statistics.toJSON());
+		result.put(Constants.STATUS, Constants.SUCCESS);
+		return result;
+	}
+
 	public JSONObject removeSpaces() {
 		JSONObject result = new JSONObject();
 		processing = true;
@@ -1051,6 +1391,94 @@ public class TMXService {
 		return result;
 	}
 
+	public JSONObject cleanFile(JSONObject json) {
+		JSONObject result = new JSONObject();
+		boolean untranslated = json.optBoolean("untranslated");
+		boolean sameAsSource = json.optBoolean("sameAsSource");
+		String srcLang = untranslated || sameAsSource ? json.getString("sourceLanguage") : null;
+		MaintenanceTasks tasks = new MaintenanceTasks(json.optBoolean("tags"), json.optBoolean("spaces"),
+				untranslated, json.optBoolean("duplicates"), false, srcLang);
+		Map<String, String> renames = new HashMap<>();
+		JSONObject languages = json.optJSONObject("changeLanguages");
+		if (languages != null) {
+			Iterator<String> it = languages.keys();
+			while (it.hasNext()) {
+				String code = it.next();
+				renames.put(code, languages.getString(code));
+			}
+		}
+		File f = new File(json.getString("file"));
+		if (!f.exists()) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, "File does not exist");
+			return result;
+		}
+		File out = new File(json.getString("output"));
+		if (out.getAbsoluteFile().equals(f.getAbsoluteFile())) {
+			result.put(Constants.STATUS, Constants.ERROR);
+			result.put(Constants.REASON, "Output file must be different from input file");
+			return result;
+		}
+		cleaningFile = true;
+		cleanFileError = "";
+		new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					getIndentation();
+					cleanStore = new CleanStore(out, tasks, sameAsSource, renames);
+					cleanStore.setIndentation(indentation);
+					boolean done = false;
+					try {
+						TMXReader reader = new TMXReader(cleanStore);
+						reader.parse(f);
+						done = true;
+					} finally {
+						if (done) {
+							cleanStore.close();
+						} else {
+							cleanStore.abort();
+						}
+					}
+				} catch (Exception ex) {
+					logger.log(Level.SEVERE, ex.getMessage(), ex);
+					if (ex.getMessage() != null) {
+						cleanFileError = ex.getMessage();
+					} else {
+						cleanFileError = "Error cleaning file";
+					}
+				}
+				cleaningFile = false;
+			}
+		}.start();
+		result.put(Constants.STATUS, Constants.SUCCESS);
+		return result;
+	}
+
+	public JSONObject getCleanFileProgress() {
+		JSONObject result = new JSONObject();
+		if (cleaningFile) {
+			result.put(Constants.STATUS, Constants.SUCCESS);
+			if (cleanStore != null) {
+				result.put("processed", cleanStore.getProcessed());
+			}
+		} else {
+			if (cleanFileError.isEmpty()) {
+				result.put(Constants.STATUS, Constants.COMPLETED);
+				if (cleanStore != null) {
+					result.put("processed", cleanStore.getProcessed());
+					result.put("written", cleanStore.getCount());
+					result.put("discarded", cleanStore.getDiscarded());
+				}
+			} else {
+				result.put(Constants.STATUS, Constants.ERROR);
+				result.put(Constants.REASON, cleanFileError);
+			}
+		}
+		return result;
+	}
+
 	public JSONObject setProperties(String id, String lang, List<String[]> dataList) {
 		JSONObject result = new JSONObject();
 		try {
@@ -1767,23 +2195,11 @@ public class TMXService {
 				@Override
 				public void run() {
 					try {
-						if (json.getBoolean("tags")) {
-							store.removeTags();
-						}
-						if (json.getBoolean("spaces")) {
-							store.removeSpaces();
-						}
-						if (json.getBoolean("untranslated")) {
-							store.removeUntranslated(new Language(json.getString("sourceLanguage"),
-									LanguageUtils.getLanguage(json.getString("sourceLanguage")).getDescription()));
-						}
-						if (json.getBoolean("duplicates")) {
-							store.removeDuplicates();
-						}
-						if (json.getBoolean("consolidate")) {
-							store.consolidateUnits(new Language(json.getString("sourceLanguage"),
-									LanguageUtils.getLanguage(json.getString("sourceLanguage")).getDescription()));
-						}
+						boolean untranslated = json.getBoolean("untranslated");
+						boolean consolidate = json.getBoolean("consolidate");
+						String srcLang = untranslated || consolidate ? json.getString("sourceLanguage") : null;
+						store.processTasks(new MaintenanceTasks(json.getBoolean("tags"), json.getBoolean("spaces"),
+								untranslated, json.getBoolean("duplicates"), consolidate, srcLang));
 					} catch (Exception e) {
 						logger.log(Level.SEVERE, e.getMessage(), e);
 						processingError = e.getMessage();
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.maxprograms.tmxserver.utils.TagGlyphs;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class TagGlyphHandler implements HttpHandler {
+
+	public TagGlyphHandler() {
+		// glyphs are generated on demand
+	}
+
+	@Override
+	public void handle(HttpExchange t) throws IOException {
+		String path = t.getRequestURI().getPath();
+		String name = path.substring(path.lastIndexOf('/') + 1);
+		int tag = -1;
+		if (name.endsWith(".svg")) {
+			try {
+				tag = Integer.parseInt(name.substring(0, name.length() - 4));
+			} catch (NumberFormatException e) {
+				// not a tag glyph
+			}
+		}
+		if (tag < 1 || tag > TagGlyphs.MAX_TAG) {
+			t.sendResponseHeaders(404, -1);
+			t.close();
+			return;
+		}
+		byte[] bytes = TagGlyphs.getSVG(tag);
+		t.getResponseHeaders().add("content-type", "image/svg+xml");
+		t.getResponseHeaders().add("cache-control", "max-age=86400");
+		t.sendResponseHeaders(200, bytes.length);
+		try (OutputStream os = t.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+}
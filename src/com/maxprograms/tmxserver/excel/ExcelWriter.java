@@ -66,16 +66,15 @@ public class ExcelWriter {
     }
 
     public void writeFile(String fileName, Sheet sheet) throws IOException, SAXException, ParserConfigurationException {
-        File folder = new File(new File(System.getProperty("java.io.tmpdir")), "ExcelWriter");
-        if (folder.exists()) {
+        File folder = Files.createTempDirectory("ExcelWriter").toFile();
+        try {
+            extractTemplate(folder);
+            setSheetName(folder, sheet.getName());
+            setStrings(folder, sheet);
+            zipFolder(folder, fileName);
+        } finally {
             ExcelReader.removeFolder(folder);
         }
-        Files.createDirectories(folder.toPath());
-        extractTemplate(folder);
-        setSheetName(folder, sheet.getName());
-        setStrings(folder, sheet);
-        zipFolder(folder, fileName);
-        ExcelReader.removeFolder(folder);
     }
 
     private void setSheetName(File folder, String name) throws SAXException, IOException, ParserConfigurationException {
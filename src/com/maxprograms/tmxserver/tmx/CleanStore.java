@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.maxprograms.tmxserver.models.Language;
+import com.maxprograms.tmxserver.models.TUnit;
+import com.maxprograms.tmxserver.utils.TextUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.Indenter;
+import com.maxprograms.xml.XMLNode;
+
+public class CleanStore implements StoreInterface {
+
+	protected static final Logger LOGGER = Logger.getLogger(CleanStore.class.getName());
+
+	private File file;
+	private MaintenanceTasks tasks;
+	private boolean sameAsSource;
+	private Map<String, String> renames;
+	private FileOutputStream out;
+	private FingerprintSet seen;
+	private MessageDigest digest;
+	private Element header;
+	private long tuCount;
+	private long written;
+	private long discarded;
+	private int indentation;
+
+	public CleanStore(File file, MaintenanceTasks tasks, boolean sameAsSource, Map<String, String> renames)
+			throws IOException {
+		this.file = file;
+		this.tasks = tasks;
+		this.sameAsSource = sameAsSource;
+		this.renames = renames;
+		if (tasks.isDuplicates()) {
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+			seen = new FingerprintSet();
+		}
+	}
+
+	private void start() throws IOException {
+		if (out != null) {
+			return;
+		}
+		out = new FileOutputStream(file);
+		writeString("<?xml version=\"1.0\" ?>\r\n"
+				+ "<!DOCTYPE tmx PUBLIC \"-//LISA OSCAR:1998//DTD for Translation Memory eXchange//EN\" \"tmx14.dtd\">\r\n"
+				+ "<tmx version=\"1.4\">\n");
+		if (header != null) {
+			writeString(TextUtils.padding(1, indentation) + header.toString() + "\n");
+		}
+		writeString(TextUtils.padding(1, indentation) + "<body>\n");
+	}
+
+	@Override
+	public void storeTU(Element tu) throws IOException {
+		start();
+		tuCount++;
+		Map<String, Element> tuvs = new LinkedHashMap<>();
+		Iterator<Element> it = tu.getChildren("tuv").iterator();
+		while (it.hasNext()) {
+			Element tuv = cleanTuv(it.next());
+			if (tuv != null && !merge(tuvs, tuv)) {
+				LOGGER.log(Level.WARNING, "Discarding unit " + tu.getAttributeValue("tuid", String.valueOf(tuCount))
+						+ ": different segments for language " + tuv.getAttributeValue("xml:lang"));
+				discarded++;
+				return;
+			}
+		}
+		String srcLang = tasks.getSrcLang();
+		if (sameAsSource && tuvs.containsKey(srcLang)) {
+			Element src = tuvs.get(srcLang).getChild("seg");
+			int count = 0;
+			Iterator<Map.Entry<String, Element>> et = tuvs.entrySet().iterator();
+			while (et.hasNext()) {
+				Map.Entry<String, Element> entry = et.next();
+				if (!entry.getKey().equals(srcLang)) {
+					if (src != null && src.equals(entry.getValue().getChild("seg"))) {
+						et.remove();
+					} else {
+						count++;
+					}
+				}
+			}
+			if (count == 0) {
+				discarded++;
+				return;
+			}
+		}
+		if (tuvs.isEmpty() || (tasks.isUntranslated() && isUntranslated(tuvs, srcLang))) {
+			discarded++;
+			return;
+		}
+		if (seen != null) {
+			byte[] fingerprint = fingerprint(tuvs);
+			if (fingerprint != null && !seen.add(fingerprint)) {
+				discarded++;
+				return;
+			}
+		}
+		String tuLang = tu.getAttributeValue("srclang", "");
+		if (renames.containsKey(tuLang)) {
+			tu.setAttribute("srclang", renames.get(tuLang));
+		}
+		List<XMLNode> content = new ArrayList<>();
+		Iterator<XMLNode> nt = tu.getContent().iterator();
+		while (nt.hasNext()) {
+			XMLNode node = nt.next();
+			if (node.getNodeType() != XMLNode.ELEMENT_NODE || !((Element) node).getName().equals("tuv")) {
+				content.add(node);
+			}
+		}
+		content.addAll(tuvs.values());
+		tu.setContent(content);
+		Indenter.indent(tu, 3, indentation);
+		writeString(TextUtils.padding(2, indentation) + tu.toString() + "\n");
+		written++;
+	}
+
+	private static boolean merge(Map<String, Element> tuvs, Element tuv) {
+		String lang = tuv.getAttributeValue("xml:lang");
+		Element existing = tuvs.get(lang);
+		if (existing == null) {
+			tuvs.put(lang, tuv);
+			return true;
+		}
+		// renames can map two variants to the same code; keep one, but never pick between two translations
+		Element seg = tuv.getChild("seg");
+		Element existingSeg = existing.getChild("seg");
+		if (TmxUtils.isBlank(seg) || String.valueOf(seg).equals(String.valueOf(existingSeg))) {
+			return true;
+		}
+		if (TmxUtils.isBlank(existingSeg)) {
+			tuvs.put(lang, tuv);
+			return true;
+		}
+		return false;
+	}
+
+	private Element cleanTuv(Element tuv) {
+		String lang = tuv.getAttributeValue("xml:lang", "");
+		if (lang.isEmpty()) {
+			lang = tuv.getAttributeValue("lang", "");
+			if (lang.isEmpty()) {
+				return null;
+			}
+			tuv.removeAttribute("lang");
+		}
+		if (renames.containsKey(lang)) {
+			lang = renames.get(lang);
+		}
+		tuv.setAttribute("xml:lang", lang);
+		Element seg = tuv.getChild("seg");
+		if (seg == null) {
+			return tuv;
+		}
+		if (tasks.isTags() && !seg.getChildren().isEmpty()) {
+			seg.setText(TmxUtils.textOnly(seg));
+		}
+		if (tasks.isSpaces()) {
+			TmxUtils.stripSegment(seg);
+			if (seg.getText().isEmpty()) {
+				return null;
+			}
+		}
+		return tuv;
+	}
+
+	private static boolean isUntranslated(Map<String, Element> tuvs, String srcLang) {
+		Iterator<Map.Entry<String, Element>> it = tuvs.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Element> entry = it.next();
+			if (!entry.getKey().equals(srcLang) && !TmxUtils.isBlank(entry.getValue().getChild("seg"))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] fingerprint(Map<String, Element> tuvs) {
+		digest.reset();
+		boolean hasText = false;
+		Iterator<Map.Entry<String, Element>> it = new TreeMap<>(tuvs).entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Element> entry = it.next();
+			Element seg = entry.getValue().getChild("seg");
+			digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 1);
+			digest.update(String.valueOf(seg).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			if (!hasText && seg != null) {
+				hasText = !TmxUtils.textOnly(seg).isEmpty();
+			}
+		}
+		return hasText ? digest.digest() : null;
+	}
+
+	private void writeString(String string) throws IOException {
+		out.write(string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void storeHeader(Element element) {
+		header = element;
+		String srcLang = header.getAttributeValue("srclang", "");
+		if (renames.containsKey(srcLang)) {
+			header.setAttribute("srclang", renames.get(srcLang));
+		}
+	}
+
+	@Override
+	public Element getHeader() {
+		return header;
+	}
+
+	@Override
+	public Set<String> getLanguages() {
+		return new TreeSet<>();
+	}
+
+	@Override
+	public List<TUnit> getUnits(long start, int count, String filterText, Language filterLanguage,
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public long countUnits(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) {
+		return 0l;
+	}
+
+	@Override
+	public FilterJob submitQuery(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+			Language sortLanguage, boolean ascending) throws IOException {
+		FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+				filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+		job.finish(new String[0], new ArrayList<>());
+		return job;
+	}
+
+	@Override
+	public void runQuery(FilterJob job) {
+		job.finish(new String[0], new ArrayList<>());
+	}
+
+	@Override
+	public List<TUnit> getUnits(FilterJob job, long start, int count) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			start();
+			writeString(TextUtils.padding(1, indentation) + "</body>\n");
+			writeString("</tmx>");
+			out.close();
+		} catch (IOException e) {
+			abort();
+			throw e;
+		} finally {
+			if (seen != null) {
+				seen.close();
+			}
+		}
+	}
+
+	public void abort() throws IOException {
+		try {
+			if (out != null) {
+				out.close();
+			}
+			Files.deleteIfExists(file.toPath());
+		} finally {
+			if (seen != null) {
+				seen.close();
+			}
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return written;
+	}
+
+	@Override
+	public long getDiscarded() {
+		return discarded;
+	}
+
+	@Override
+	public String saveData(String id, String lang, String value) {
+		return null;
+	}
+
+	@Override
+	public void writeFile(File f) {
+		// do nothing
+	}
+
+	@Override
+	public int getSaved() {
+		return 0;
+	}
+
+	@Override
+	public void commit() {
+		// do nothing
+	}
+
+	@Override
+	public Element getTu(String id) {
+		return null;
+	}
+
+	@Override
+	public void delete(List<String> selected) {
+		// do nothing
+	}
+
+	@Override
+	public void replaceText(String search, String replace, Language language, boolean regExp) {
+		// do nothing
+	}
+
+	@Override
+	public ReplacePreview previewReplace(String search, String replace, Language language, boolean regExp,
+			int limit) {
+		return new ReplacePreview(limit);
+	}
+
+	@Override
+	public void batchReplace(Glossary glossary) {
+		// do nothing
+	}
+
+	@Override
+	public long getProcessed() {
+		return tuCount;
+	}
+
+	@Override
+	public void insertUnit(String id) {
+		// do nothing
+	}
+
+	@Override
+	public long removeUntranslated(Language lang) {
+		return 0;
+	}
+
+	@Override
+	public void removeSameAsSource(Language lang) {
+		// do nothing
+	}
+
+	@Override
+	public void addLanguage(Language lang) {
+		// do nothing
+	}
+
+	@Override
+	public void removeLanguage(Language lang) {
+		// do nothing
+	}
+
+	@Override
+	public void removeTags() {
+		// do nothing
+	}
+
+	@Override
+	public void changeLanguage(Language oldLanguage, Language newLanguage) {
+		// do nothing
+	}
+
+	@Override
+	public void removeDuplicates() {
+		// do nothing
+	}
+
+	@Override
+	public NearDuplicates findNearDuplicates(Language srcLang, double threshold) {
+		return new NearDuplicates(new String[0], threshold);
+	}
+
+	@Override
+	public Statistics getStatistics() {
+		return new Statistics();
+	}
+
+	@Override
+	public void removeSpaces() {
+		// do nothing
+	}
+
+	@Override
+	public void consolidateUnits(Language lang) {
+		// do nothing
+	}
+
+	@Override
+	public void processTasks(MaintenanceTasks tasks) {
+		// do nothing
+	}
+
+	@Override
+	public void setTuAttributes(String id, List<String[]> attributes) {
+		// do nothing
+	}
+
+	@Override
+	public void setTuProperties(String id, List<String[]> properties) {
+		// do nothing
+	}
+
+	@Override
+	public void setTuNotes(String id, List<String> notes) {
+		// do nothing
+	}
+
+	@Override
+	public void exportDelimited(String delimited) {
+		// do nothing
+	}
+
+	@Override
+	public void exportExcel(String file) {
+		// do nothing
+	}
+
+	@Override
+	public long getExported() {
+		return 0l;
+	}
+
+	@Override
+	public Element getTuv(String id, String lang) {
+		return null;
+	}
+
+	@Override
+	public void setTuvAttributes(String id, String lang, List<String[]> attributes) {
+		// do nothing
+	}
+
+	@Override
+	public void setTuvProperties(String id, String lang, List<String[]> dataList) {
+		// do nothing
+	}
+
+	@Override
+	public void setTuvNotes(String id, String lang, List<String> notes) {
+		// do nothing
+	}
+
+	@Override
+	public void setIndentation(int indentation) {
+		this.indentation = indentation;
+	}
+}
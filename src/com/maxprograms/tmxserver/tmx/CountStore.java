@@ -13,6 +13,7 @@
 package com.maxprograms.tmxserver.tmx;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -48,8 +49,34 @@ public class CountStore implements StoreInterface {
 
 	@Override
 	public List<TUnit> getUnits(long start, int count, String filterText, Language filterLanguage,
-			boolean caseSensitiveFilter, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
-			Language sortLanguage, boolean ascending) {
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public long countUnits(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) {
+		return 0l;
+	}
+
+	@Override
+	public FilterJob submitQuery(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+			Language sortLanguage, boolean ascending) throws IOException {
+		FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+				filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+		job.finish(new String[0], new ArrayList<>());
+		return job;
+	}
+
+	@Override
+	public void runQuery(FilterJob job) {
+		job.finish(new String[0], new ArrayList<>());
+	}
+
+	@Override
+	public List<TUnit> getUnits(FilterJob job, long start, int count) {
 		return new ArrayList<>();
 	}
 
@@ -103,6 +130,17 @@ public class CountStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public ReplacePreview previewReplace(String search, String replace, Language language, boolean regExp,
+			int limit) {
+		return new ReplacePreview(limit);
+	}
+
+	@Override
+	public void batchReplace(Glossary glossary) {
+		// do nothing
+	}
+
 	@Override
 	public long getProcessed() {
 		return tuCount;
@@ -148,6 +186,16 @@ public class CountStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public NearDuplicates findNearDuplicates(Language srcLang, double threshold) {
+		return new NearDuplicates(new String[0], threshold);
+	}
+
+	@Override
+	public Statistics getStatistics() {
+		return new Statistics();
+	}
+
 	@Override
 	public void removeSpaces() {
 		// do nothing
@@ -158,6 +206,11 @@ public class CountStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public void processTasks(MaintenanceTasks tasks) {
+		// do nothing
+	}
+
 	@Override
 	public void setTuAttributes(String id, List<String[]> attributes) {
 		// do nothing
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.maxprograms.tmxserver.models.Language;
+
+public class FilterCache {
+
+	private static final int SIZE = 8;
+
+	private Map<String, Entry> entries;
+	private long version;
+
+	public FilterCache() {
+		entries = new LinkedHashMap<>(SIZE, 0.75f, true) {
+
+			private static final long serialVersionUID = -2150183458718376582L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > SIZE;
+			}
+		};
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, long version, String[] ids, List<Integer> hits) {
+		if (version == this.version) {
+			entries.put(key, new Entry(ids, hits));
+		}
+	}
+
+	public synchronized void invalidate() {
+		version++;
+		entries.clear();
+	}
+
+	public static String getKey(String filterText, Language filterLanguage, boolean caseSensitive,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(caseSensitive ? 'c' : '-');
+		sb.append(ignoreAccents ? 'a' : '-');
+		sb.append(regExp ? 'r' : '-');
+		if (filterUntranslated) {
+			sb.append('u');
+			sb.append(filterSrcLanguage.getCode());
+		}
+		if (filterText != null) {
+			sb.append('|');
+			sb.append(filterLanguage.getCode());
+			sb.append('|');
+			sb.append(filterText);
+		}
+		return sb.toString();
+	}
+
+	public static class Entry {
+
+		private String[] ids;
+		private List<Integer> hits;
+
+		Entry(String[] ids, List<Integer> hits) {
+			this.ids = ids;
+			this.hits = hits;
+		}
+
+		public String[] getIds() {
+			return ids;
+		}
+
+		public List<Integer> getHits() {
+			return hits;
+		}
+
+		public int size() {
+			return hits == null ? ids.length : hits.size();
+		}
+	}
+}
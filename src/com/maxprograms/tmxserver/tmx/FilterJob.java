@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.maxprograms.tmxserver.models.Language;
+import com.maxprograms.tmxserver.utils.TextUtils;
+import com.maxprograms.tmxserver.utils.TimedCharSequence;
+
+public class FilterJob {
+
+	private String id;
+	private String filterText;
+	private Language filterLanguage;
+	private boolean caseSensitive;
+	private boolean ignoreAccents;
+	private boolean filterUntranslated;
+	private boolean regExp;
+	private Language filterSrcLanguage;
+	private Language sortLanguage;
+	private boolean ascending;
+	private SegmentFilter filter;
+
+	private String[] ids;
+	private List<Integer> hits;
+	private boolean all;
+	private long processed;
+	private boolean done;
+	private boolean cancelled;
+	private String error;
+	private List<String> timeouts;
+	private volatile long deadline;
+	private volatile boolean expired;
+	private QueryProfile profile;
+
+	public FilterJob(String filterText, Language filterLanguage, boolean caseSensitive, boolean ignoreAccents,
+			boolean filterUntranslated, boolean regExp, Language filterSrcLanguage, Language sortLanguage,
+			boolean ascending) throws IOException {
+		if (filterText != null && filterText.isEmpty() && !filterUntranslated) {
+			throw new IOException("Wrong filtering option");
+		}
+		this.id = UUID.randomUUID().toString();
+		this.filterText = filterText;
+		this.filterLanguage = filterLanguage;
+		this.caseSensitive = caseSensitive;
+		this.ignoreAccents = ignoreAccents;
+		this.filterUntranslated = filterUntranslated;
+		this.regExp = regExp;
+		this.filterSrcLanguage = filterSrcLanguage;
+		this.sortLanguage = sortLanguage;
+		this.ascending = ascending;
+		if (filterText != null && !filterText.isEmpty()) {
+			filter = new SegmentFilter(filterText, caseSensitive, ignoreAccents, regExp);
+		}
+		hits = new ArrayList<>();
+		timeouts = new ArrayList<>();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public QueryProfile getProfile() {
+		return profile;
+	}
+
+	public void setProfile(QueryProfile profile) {
+		this.profile = profile;
+	}
+
+	public String getKey() {
+		return FilterCache.getKey(filterText, filterLanguage, caseSensitive, ignoreAccents, filterUntranslated, regExp,
+				filterSrcLanguage);
+	}
+
+	public SegmentFilter getFilter() {
+		return filter;
+	}
+
+	public Language getFilterLanguage() {
+		return filterLanguage;
+	}
+
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
+	public boolean isIgnoreAccents() {
+		return ignoreAccents;
+	}
+
+	public boolean isFilterUntranslated() {
+		return filterUntranslated;
+	}
+
+	public Language getFilterSrcLanguage() {
+		return filterSrcLanguage;
+	}
+
+	public Language getSortLanguage() {
+		return sortLanguage;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	public synchronized void start(String[] ids) {
+		this.ids = ids;
+		deadline = TimedCharSequence.deadline(TextUtils.getQueryTimeout());
+	}
+
+	public boolean isExpired() {
+		if (!expired && regExp && deadline != 0 && System.nanoTime() - deadline > 0) {
+			expired = true;
+		}
+		return expired;
+	}
+
+	public synchronized void timedOut(String unit) {
+		timeouts.add(unit);
+	}
+
+	public synchronized List<String> getTimeouts() {
+		return new ArrayList<>(timeouts);
+	}
+
+	public synchronized boolean isTruncated() {
+		return expired || !timeouts.isEmpty();
+	}
+
+	public synchronized void addHits(List<Integer> list, long scanned) {
+		processed = scanned;
+		if (sortLanguage == null) {
+			hits.addAll(list);
+			notifyAll();
+		}
+	}
+
+	public synchronized void finish(String[] ids, List<Integer> list) {
+		this.ids = ids;
+		all = list == null;
+		hits = all ? new ArrayList<>() : new ArrayList<>(list);
+		processed = ids.length;
+		done = true;
+		notifyAll();
+	}
+
+	public synchronized void fail(String reason) {
+		error = reason;
+		done = true;
+		notifyAll();
+	}
+
+	public synchronized void cancel() {
+		cancelled = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	public synchronized String getError() {
+		return error;
+	}
+
+	public synchronized long getProcessed() {
+		return processed;
+	}
+
+	public synchronized int getHitCount() {
+		return all ? ids.length : hits.size();
+	}
+
+	public synchronized int getTotal() {
+		return ids == null ? 0 : ids.length;
+	}
+
+	public synchronized void waitFor(long count, long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (!done && !cancelled && hits.size() < count && remaining > 0) {
+			wait(remaining);
+			remaining = end - System.currentTimeMillis();
+		}
+	}
+
+	public synchronized String[] getIds() {
+		return ids;
+	}
+
+	public synchronized long[] getPositions(long start, int count) {
+		if (ids == null) {
+			return new long[0];
+		}
+		int total = getHitCount();
+		long from = done && total < count ? 0 : Math.min(start, total);
+		long to = done && total < count ? total : Math.min(start + count, total);
+		long[] positions = new long[(int) (to - from)];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = all ? from + i : hits.get((int) from + i);
+		}
+		return positions;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+public class FingerprintSet {
+
+	public static final int BUDGET = 1000000;
+	private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private int budget;
+	private Set<Fingerprint> memory;
+	private File spill;
+	private DB db;
+	private Set<String> disk;
+
+	public FingerprintSet() {
+		this(BUDGET);
+	}
+
+	public FingerprintSet(int budget) {
+		this.budget = budget;
+		memory = new HashSet<>();
+	}
+
+	public boolean add(byte[] digest) throws IOException {
+		Fingerprint fingerprint = new Fingerprint(digest);
+		if (memory.contains(fingerprint)) {
+			return false;
+		}
+		if (disk != null) {
+			return disk.add(fingerprint.toString());
+		}
+		memory.add(fingerprint);
+		if (memory.size() > budget) {
+			spill();
+		}
+		return true;
+	}
+
+	static Fingerprint fingerprint(String text) {
+		return new Fingerprint(DIGEST.get().digest(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public boolean isSpilled() {
+		return disk != null;
+	}
+
+	private void spill() throws IOException {
+		spill = File.createTempFile("fingerprints", ".db", TmxUtils.getWorkFolder());
+		db = DBMaker.newFileDB(spill).transactionDisable().closeOnJvmShutdown().deleteFilesAfterClose().make();
+		disk = db.getHashSet("fingerprints");
+	}
+
+	public void close() {
+		memory.clear();
+		if (db != null) {
+			db.close();
+			db = null;
+			disk = null;
+		}
+	}
+
+	static class Fingerprint {
+
+		private long high;
+		private long low;
+
+		Fingerprint(byte[] digest) {
+			ByteBuffer buffer = ByteBuffer.wrap(digest);
+			high = buffer.getLong();
+			low = buffer.getLong();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Fingerprint) {
+				Fingerprint f = (Fingerprint) obj;
+				return high == f.high && low == f.low;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(high);
+		}
+
+		@Override
+		public String toString() {
+			return Long.toHexString(high) + ':' + Long.toHexString(low);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+
+public class FoldedText {
+
+	public static final char SEPARATOR = '\uFFFF';
+
+	private String original;
+	private String text;
+	private int[] offsets;
+
+	public FoldedText(String original, boolean caseSensitive, boolean ignoreAccents) {
+		this.original = original;
+		StringBuilder sb = new StringBuilder(original.length());
+		offsets = new int[original.length() + 1];
+		int i = 0;
+		while (i < original.length()) {
+			int c = original.codePointAt(i);
+			int from = sb.length();
+			fold(c, caseSensitive, ignoreAccents, sb);
+			if (sb.length() >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, Math.max(sb.length() + 1, offsets.length * 2));
+			}
+			for (int j = from; j < sb.length(); j++) {
+				offsets[j] = i;
+			}
+			i += Character.charCount(c);
+		}
+		offsets[sb.length()] = original.length();
+		text = sb.toString();
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getOriginal() {
+		return original;
+	}
+
+	public int getStart(int index) {
+		return offsets[index];
+	}
+
+	public int getEnd(int index) {
+		if (index == 0) {
+			return 0;
+		}
+		int start = offsets[index - 1];
+		return start + Character.charCount(original.codePointAt(start));
+	}
+
+	public static String fold(String string, boolean caseSensitive, boolean ignoreAccents) {
+		StringBuilder sb = new StringBuilder(string.length());
+		int i = 0;
+		while (i < string.length()) {
+			int c = string.codePointAt(i);
+			fold(c, caseSensitive, ignoreAccents, sb);
+			i += Character.charCount(c);
+		}
+		return sb.toString();
+	}
+
+	public static String fold(Element seg, boolean caseSensitive, boolean ignoreAccents) {
+		StringBuilder sb = new StringBuilder();
+		if (seg != null) {
+			fold(seg, caseSensitive, ignoreAccents, sb);
+		}
+		return sb.toString();
+	}
+
+	private static void fold(Element e, boolean caseSensitive, boolean ignoreAccents, StringBuilder sb) {
+		List<XMLNode> content = e.getContent();
+		Iterator<XMLNode> it = content.iterator();
+		while (it.hasNext()) {
+			XMLNode node = it.next();
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				sb.append(fold(((TextNode) node).getText(), caseSensitive, ignoreAccents));
+				sb.append(SEPARATOR);
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				Element child = (Element) node;
+				if (child.getName().equals("sub") || child.getName().equals("hi")) {
+					fold(child, caseSensitive, ignoreAccents, sb);
+				}
+			}
+		}
+	}
+
+	private static void fold(int c, boolean caseSensitive, boolean ignoreAccents, StringBuilder sb) {
+		if (c < 0x80) {
+			sb.append((char) (caseSensitive ? c : Character.toLowerCase(c)));
+			return;
+		}
+		if (!ignoreAccents) {
+			// decomposing would split "\u00E9" into "e" plus a mark and let "e" match it
+			sb.appendCodePoint(caseSensitive ? c : Character.toLowerCase(Character.toUpperCase(c)));
+			return;
+		}
+		String decomposed = Normalizer.normalize(new String(Character.toChars(c)), Form.NFKD);
+		int i = 0;
+		while (i < decomposed.length()) {
+			int d = decomposed.codePointAt(i);
+			i += Character.charCount(d);
+			if (Character.getType(d) == Character.NON_SPACING_MARK) {
+				continue;
+			}
+			sb.appendCodePoint(caseSensitive ? d : Character.toLowerCase(Character.toUpperCase(d)));
+		}
+	}
+}
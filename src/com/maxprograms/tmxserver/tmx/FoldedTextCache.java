@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mapdb.DB;
+
+import com.maxprograms.xml.Element;
+
+public class FoldedTextCache {
+
+	private DB db;
+	private AtomicLong columnCount;
+	private Map<String, Map<String, String>> columns;
+
+	public FoldedTextCache() {
+		this(null);
+	}
+
+	public FoldedTextCache(DB db) {
+		this.db = db;
+		columnCount = new AtomicLong();
+		columns = new ConcurrentHashMap<>();
+	}
+
+	public String get(String lang, String id, boolean caseSensitive, boolean ignoreAccents) {
+		Map<String, String> column = columns.get(getKey(lang, caseSensitive, ignoreAccents));
+		return column == null ? null : column.get(id);
+	}
+
+	public String put(String lang, String id, Element tuv, boolean caseSensitive, boolean ignoreAccents) {
+		String folded = FoldedText.fold(tuv.getChild("seg"), caseSensitive, ignoreAccents);
+		columns.computeIfAbsent(getKey(lang, caseSensitive, ignoreAccents), this::createColumn).put(id, folded);
+		return folded;
+	}
+
+	private Map<String, String> createColumn(String key) {
+		if (db == null) {
+			return new ConcurrentHashMap<>();
+		}
+		return db.getTreeMap("folded" + columnCount.incrementAndGet());
+	}
+
+	public void remove(String lang, String id) {
+		Iterator<Entry<String, Map<String, String>>> it = columns.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<String, Map<String, String>> entry = it.next();
+			if (entry.getKey().startsWith(lang + '|')) {
+				entry.getValue().remove(id);
+			}
+		}
+	}
+
+	public void remove(String id) {
+		Iterator<Map<String, String>> it = columns.values().iterator();
+		while (it.hasNext()) {
+			it.next().remove(id);
+		}
+	}
+
+	public void invalidate(String lang) {
+		Iterator<Entry<String, Map<String, String>>> it = columns.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<String, Map<String, String>> entry = it.next();
+			if (entry.getKey().startsWith(lang + '|')) {
+				it.remove();
+				entry.getValue().clear();
+			}
+		}
+	}
+
+	public void invalidate() {
+		Iterator<Map<String, String>> it = columns.values().iterator();
+		while (it.hasNext()) {
+			Map<String, String> column = it.next();
+			it.remove();
+			column.clear();
+		}
+	}
+
+	private static String getKey(String lang, boolean caseSensitive, boolean ignoreAccents) {
+		return lang + '|' + (caseSensitive ? 'c' : 'i') + (ignoreAccents ? 'a' : 'n');
+	}
+}
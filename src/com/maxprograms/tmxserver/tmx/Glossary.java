@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+
+public class Glossary {
+
+	private List<String[]> rules;
+	private LongAdder[] counts;
+	private Map<String, TermAutomaton> automata;
+	private Map<String, List<Integer>> indexes;
+
+	public Glossary() {
+		rules = new ArrayList<>();
+	}
+
+	public void addRule(String search, String replace, String lang) {
+		if (automata != null) {
+			throw new IllegalStateException("Glossary already compiled");
+		}
+		rules.add(new String[] { search, replace, lang });
+	}
+
+	public int size() {
+		return rules.size();
+	}
+
+	public synchronized void compile() {
+		if (automata != null) {
+			return;
+		}
+		counts = new LongAdder[rules.size()];
+		Map<String, List<String>> terms = new HashMap<>();
+		indexes = new HashMap<>();
+		for (int i = 0; i < rules.size(); i++) {
+			counts[i] = new LongAdder();
+			String[] rule = rules.get(i);
+			if (rule[0].isEmpty()) {
+				continue;
+			}
+			terms.computeIfAbsent(rule[2], k -> new ArrayList<>()).add(rule[0]);
+			indexes.computeIfAbsent(rule[2], k -> new ArrayList<>()).add(i);
+		}
+		automata = new HashMap<>();
+		Iterator<String> it = terms.keySet().iterator();
+		while (it.hasNext()) {
+			String lang = it.next();
+			automata.put(lang, new TermAutomaton(terms.get(lang)));
+		}
+	}
+
+	public Set<String> getLanguages() {
+		compile();
+		return new TreeSet<>(automata.keySet());
+	}
+
+	public String replace(String lang, String text) {
+		compile();
+		TermAutomaton automaton = automata.get(lang);
+		if (automaton == null) {
+			return text;
+		}
+		List<Integer> index = indexes.get(lang);
+		List<int[]> matches = new ArrayList<>();
+		int state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			state = automaton.next(state, text.charAt(i));
+			int match = automaton.getMatch(state);
+			while (match != 0) {
+				int term = automaton.getMatchTerm(match);
+				matches.add(new int[] { i + 1 - rules.get(index.get(term))[0].length(), i + 1, term });
+				match = automaton.getNextMatch(match);
+			}
+		}
+		if (matches.isEmpty()) {
+			return text;
+		}
+		matches.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]));
+		StringBuilder sb = new StringBuilder(text.length());
+		int last = 0;
+		Iterator<int[]> it = matches.iterator();
+		while (it.hasNext()) {
+			int[] match = it.next();
+			if (match[0] < last) {
+				continue;
+			}
+			int rule = index.get(match[2]);
+			sb.append(text, last, match[0]);
+			sb.append(rules.get(rule)[1]);
+			counts[rule].increment();
+			last = match[1];
+		}
+		sb.append(text, last, text.length());
+		return sb.toString();
+	}
+
+	public boolean replace(String lang, Element seg) {
+		Map<TextNode, String> replacements = new IdentityHashMap<>();
+		collect(lang, seg, replacements);
+		Iterator<Map.Entry<TextNode, String>> it = replacements.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<TextNode, String> entry = it.next();
+			entry.getKey().setText(entry.getValue());
+		}
+		return !replacements.isEmpty();
+	}
+
+	private void collect(String lang, Element element, Map<TextNode, String> replacements) {
+		List<XMLNode> content = element.getContent();
+		Iterator<XMLNode> it = content.iterator();
+		while (it.hasNext()) {
+			XMLNode node = it.next();
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				TextNode text = (TextNode) node;
+				String replaced = replace(lang, text.getText());
+				if (replaced != text.getText()) {
+					replacements.put(text, replaced);
+				}
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				Element e = (Element) node;
+				if (e.getName().equals("sub") || e.getName().equals("hi")) {
+					collect(lang, e, replacements);
+				}
+			}
+		}
+	}
+
+	public long getCount(int rule) {
+		return counts == null ? 0l : counts[rule].sum();
+	}
+
+	public JSONArray toJSON() {
+		JSONArray array = new JSONArray();
+		for (int i = 0; i < rules.size(); i++) {
+			String[] rule = rules.get(i);
+			JSONObject json = new JSONObject();
+			json.put("search", rule[0]);
+			json.put("replace", rule[1]);
+			json.put("lang", rule[2]);
+			json.put("count", getCount(i));
+			array.put(json);
+		}
+		return array;
+	}
+}
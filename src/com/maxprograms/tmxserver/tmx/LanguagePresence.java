@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class LanguagePresence {
+
+	private Map<String, Integer> bits;
+	private Map<String, long[]> masks;
+
+	public LanguagePresence() {
+		bits = new ConcurrentHashMap<>();
+		masks = new ConcurrentHashMap<>();
+	}
+
+	public void set(String id, String lang, boolean present) {
+		Integer known = bits.get(lang);
+		int bit = known != null ? known : getBit(lang);
+		int word = bit >>> 6;
+		masks.compute(id, (key, mask) -> {
+			long[] result = mask == null ? new long[word + 1] : Arrays.copyOf(mask, Math.max(mask.length, word + 1));
+			if (present) {
+				result[word] |= 1l << bit;
+			} else {
+				result[word] &= ~(1l << bit);
+			}
+			return result;
+		});
+	}
+
+	public boolean has(String id, String lang) {
+		Integer bit = bits.get(lang);
+		long[] mask = masks.get(id);
+		if (bit == null || mask == null || bit >>> 6 >= mask.length) {
+			return false;
+		}
+		return (mask[bit >>> 6] & (1l << bit)) != 0;
+	}
+
+	public boolean hasOthers(String id, String lang) {
+		long[] mask = masks.get(id);
+		if (mask == null) {
+			return false;
+		}
+		Integer bit = bits.get(lang);
+		for (int i = 0; i < mask.length; i++) {
+			long word = mask[i];
+			if (bit != null && bit >>> 6 == i) {
+				word &= ~(1l << bit);
+			}
+			if (word != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void remove(String id) {
+		masks.remove(id);
+	}
+
+	public synchronized void removeLanguage(String lang) {
+		Integer bit = bits.get(lang);
+		if (bit == null) {
+			return;
+		}
+		clearBit(bit);
+		bits.remove(lang);
+	}
+
+	public synchronized void changeLanguage(String oldLang, String newLang) {
+		removeLanguage(newLang);
+		Integer bit = bits.remove(oldLang);
+		if (bit != null) {
+			bits.put(newLang, bit);
+		}
+	}
+
+	private synchronized int getBit(String lang) {
+		Integer bit = bits.get(lang);
+		if (bit != null) {
+			return bit;
+		}
+		int next = 0;
+		while (bits.containsValue(next)) {
+			next++;
+		}
+		bits.put(lang, next);
+		return next;
+	}
+
+	private void clearBit(int bit) {
+		int word = bit >>> 6;
+		masks.replaceAll((key, mask) -> {
+			if (word >= mask.length || (mask[word] & (1l << bit)) == 0) {
+				return mask;
+			}
+			long[] result = Arrays.copyOf(mask, mask.length);
+			result[word] &= ~(1l << bit);
+			return result;
+		});
+	}
+}
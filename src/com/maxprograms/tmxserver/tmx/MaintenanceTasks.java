@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+public class MaintenanceTasks {
+
+	private boolean tags;
+	private boolean spaces;
+	private boolean untranslated;
+	private boolean duplicates;
+	private boolean consolidate;
+	private String srcLang;
+
+	public MaintenanceTasks(boolean tags, boolean spaces, boolean untranslated, boolean duplicates,
+			boolean consolidate, String srcLang) {
+		this.tags = tags;
+		this.spaces = spaces;
+		this.untranslated = untranslated;
+		this.duplicates = duplicates;
+		this.consolidate = consolidate;
+		this.srcLang = srcLang;
+	}
+
+	public boolean isTags() {
+		return tags;
+	}
+
+	public boolean isSpaces() {
+		return spaces;
+	}
+
+	public boolean isUntranslated() {
+		return untranslated;
+	}
+
+	public boolean isDuplicates() {
+		return duplicates;
+	}
+
+	public boolean isConsolidate() {
+		return consolidate;
+	}
+
+	public String getSrcLang() {
+		return srcLang;
+	}
+}
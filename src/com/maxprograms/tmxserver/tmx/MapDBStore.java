@@ -1,21 +1,28 @@
 package com.maxprograms.tmxserver.tmx;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -29,11 +36,10 @@ import com.maxprograms.tmxserver.excel.ExcelWriter;
 import com.maxprograms.tmxserver.excel.Sheet;
 import com.maxprograms.tmxserver.models.Language;
 import com.maxprograms.tmxserver.models.TUnit;
+import com.maxprograms.tmxserver.utils.RegexTimeoutException;
 import com.maxprograms.tmxserver.utils.TextUtils;
-import com.maxprograms.xml.Document;
 import com.maxprograms.xml.Element;
 import com.maxprograms.xml.Indenter;
-import com.maxprograms.xml.SAXBuilder;
 
 public class MapDBStore implements StoreInterface {
 
@@ -43,7 +49,7 @@ public class MapDBStore implements StoreInterface {
     private BTreeMap<String, Element> tus;
     private Map<String, DB> tuvDatabases;
     private Map<String, BTreeMap<String, Element>> maps;
-    private SAXBuilder builder;
+    private int databases;
     private long time;
     private long discarded;
     private long exported;
@@ -52,7 +58,12 @@ public class MapDBStore implements StoreInterface {
     private Element header;
     private File workFolder;
     private FileOutputStream out;
-    private long processed;
+    private AtomicLong processed;
+    private FoldedTextCache foldedTexts;
+    private RenderCache renders;
+    private FilterCache filters;
+    private LanguagePresence presence;
+    private volatile Statistics statistics;
 
     public MapDBStore() throws IOException {
         workFolder = TmxUtils.getWorkFolder();
@@ -68,6 +79,11 @@ public class MapDBStore implements StoreInterface {
         languages = new TreeSet<>();
         time = System.currentTimeMillis();
         order = new ArrayList<>();
+        foldedTexts = new FoldedTextCache(mapdb);
+        renders = new RenderCache();
+        filters = new FilterCache();
+        presence = new LanguagePresence();
+        processed = new AtomicLong();
     }
 
     @Override
@@ -91,13 +107,9 @@ public class MapDBStore implements StoreInterface {
                 continue;
             }
             if (!languages.contains(lang)) {
-                File database = new File(workFolder, "mapdb");
-                DB langdb = DBMaker.newFileDB(new File(database, lang)).closeOnJvmShutdown().asyncWriteEnable().deleteFilesAfterClose().make();
-                tuvDatabases.put(lang, langdb);
-                maps.put(lang, langdb.getTreeMap("tuvMap"));
-                languages.add(lang);
+                createLanguage(lang);
             }
-            maps.get(lang).put(id, tuv);
+            storeTuv(lang, id, tuv);
             tuvCount++;
         }
         if (tuvCount > 0) {
@@ -109,6 +121,28 @@ public class MapDBStore implements StoreInterface {
         }
     }
 
+    private void createLanguage(String lang) {
+        File database = new File(workFolder, "mapdb");
+        DB langdb = DBMaker.newFileDB(new File(database, "tuvdata" + databases++)).closeOnJvmShutdown().asyncWriteEnable().deleteFilesAfterClose().make();
+        tuvDatabases.put(lang, langdb);
+        maps.put(lang, langdb.getTreeMap("tuvMap"));
+        languages.add(lang);
+    }
+
+    private void storeTuv(String lang, String id, Element tuv) {
+        maps.get(lang).put(id, tuv);
+        presence.set(id, lang, !TmxUtils.isBlank(tuv.getChild("seg")));
+        renders.remove(id, lang);
+        foldedTexts.remove(lang, id);
+    }
+
+    private void removeTuv(String lang, String id) {
+        maps.get(lang).remove(id);
+        presence.set(id, lang, false);
+        renders.remove(id, lang);
+        foldedTexts.remove(lang, id);
+    }
+
     @Override
     public void storeHeader(Element header) {
         this.header = header;
@@ -126,114 +160,266 @@ public class MapDBStore implements StoreInterface {
 
     @Override
     public List<TUnit> getUnits(long start, int count, String filterText, Language filterLanguage,
-            boolean caseSensitive, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+            boolean caseSensitive, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+            Language filterSrcLanguage, Language sortLanguage, boolean ascending) throws IOException {
+        FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitive, ignoreAccents, filterUntranslated,
+                regExp, filterSrcLanguage, sortLanguage, ascending);
+        filterUnits(job);
+        return getUnits(job, start, count);
+    }
+
+    @Override
+    public FilterJob submitQuery(String filterText, Language filterLanguage, boolean caseSensitive,
+            boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
             Language sortLanguage, boolean ascending) throws IOException {
-        processed = 0;
+        FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitive, ignoreAccents, filterUntranslated,
+                regExp, filterSrcLanguage, sortLanguage, ascending);
+        new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    filterUnits(job);
+                } catch (Exception e) {
+                    job.fail(e.getMessage());
+                }
+            }
+        }.start();
+        return job;
+    }
+
+    @Override
+    public List<TUnit> getUnits(FilterJob job, long start, int count) throws IOException {
+        QueryProfile profile = job.getProfile();
+        long time = System.nanoTime();
+        long[] positions = job.getPositions(start, count);
+        String[] ids = job.getIds();
         List<TUnit> result = new ArrayList<>();
-        Iterator<String> ut = order.iterator();
-        if (filterText == null && !filterUntranslated) {
-            for (long i = 0; i < tus.size(); i++) {
-                String id = ut.next();
-                Map<String, String> map = new HashMap<>();
-                Iterator<String> it = languages.iterator();
-                while (it.hasNext()) {
-                    String lang = it.next();
-                    map.put(lang, getTuv(id, lang, null, caseSensitive, regExp));
-                }
-                result.add(new TUnit(1 + i, id, map));
-                processed++;
-            }
-        } else if (filterText != null && !filterText.isEmpty()) {
-            String srclang = filterUntranslated ? filterSrcLanguage.getCode() : "";
-            for (long i = 0; i < tus.size(); i++) {
-                String id = ut.next();
-                if (filterUntranslated && !isUntranslated(id, srclang)) {
-                    continue;
+        for (int i = 0; i < positions.length; i++) {
+            int position = (int) positions[i];
+            result.add(getUnit(ids[position], position + 1l, job.getFilter(), job.getFilterLanguage(), profile));
+        }
+        if (profile != null) {
+            profile.time("render", time);
+        }
+        return result;
+    }
+
+    @Override
+    public long countUnits(String filterText, Language filterLanguage, boolean caseSensitive, boolean ignoreAccents,
+            boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) throws IOException {
+        FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitive, ignoreAccents, filterUntranslated,
+                regExp, filterSrcLanguage, null, true);
+        filterUnits(job);
+        return job.getHitCount();
+    }
+
+    @Override
+    public void runQuery(FilterJob job) throws IOException {
+        filterUnits(job);
+    }
+
+    private void filterUnits(FilterJob job) throws IOException {
+        QueryProfile profile = job.getProfile();
+        String key = job.getKey();
+        FilterCache.Entry entry = filters.get(key);
+        if (entry != null) {
+            if (profile != null) {
+                profile.setSource("filter cache");
+            }
+            finish(job, entry.getIds(), entry.getHits());
+            return;
+        }
+        long version = filters.getVersion();
+        String[] ids = order.toArray(new String[order.size()]);
+        job.start(ids);
+        long time = System.nanoTime();
+        Predicate<String> predicate = getPredicate(job);
+        List<Integer> hits = null;
+        if (predicate != null) {
+            hits = new ArrayList<>();
+            for (int from = 0; from < ids.length; from += ParallelFilter.CHUNK_SIZE) {
+                if (job.isCancelled()) {
+                    return;
                 }
-                String seg = getTuv(id, filterLanguage.getCode(), filterText, caseSensitive, regExp);
-                if (seg.indexOf(TmxUtils.STYLE) != -1) {
-                    Map<String, String> map = new HashMap<>();
-                    Iterator<String> it = languages.iterator();
-                    while (it.hasNext()) {
-                        String lang = it.next();
-                        if (lang.equals(filterLanguage.getCode())) {
-                            map.put(lang, getTuv(id, lang, filterText, caseSensitive, regExp));
-                        } else {
-                            map.put(lang, getTuv(id, lang, null, caseSensitive, regExp));
-                        }
-                    }
-                    result.add(new TUnit(processed + 1, id, map));
+                int to = Math.min(from + ParallelFilter.CHUNK_SIZE, ids.length);
+                List<Integer> chunk = ParallelFilter.filter(ids, from, to, predicate);
+                hits.addAll(chunk);
+                job.addHits(chunk, to);
+                if (job.isExpired()) {
+                    break;
                 }
-                processed++;
             }
-        } else if (filterUntranslated) {
-            String srclang = filterSrcLanguage.getCode();
-            for (long i = 0; i < tus.size(); i++) {
-                String id = ut.next();
-                if (isUntranslated(id, srclang)) {
-                    Map<String, String> map = new HashMap<>();
-                    Iterator<String> it = languages.iterator();
-                    while (it.hasNext()) {
-                        String lang = it.next();
-                        map.put(lang, getTuv(id, lang, null, caseSensitive, regExp));
+            hits = Collections.unmodifiableList(hits);
+        }
+        if (profile != null) {
+            profile.time("filter", time);
+        }
+        if (!job.isTruncated()) {
+            filters.put(key, version, ids, hits);
+        }
+        finish(job, ids, hits);
+    }
+
+    private Predicate<String> getPredicate(FilterJob job) {
+        SegmentFilter segFilter = job.getFilter();
+        boolean filterUntranslated = job.isFilterUntranslated();
+        QueryProfile profile = job.getProfile();
+        if (segFilter != null) {
+            String lang = job.getFilterLanguage().getCode();
+            String srclang = filterUntranslated ? job.getFilterSrcLanguage().getCode() : "";
+            boolean caseSensitive = job.isCaseSensitive();
+            boolean ignoreAccents = job.isIgnoreAccents();
+            Map<String, Element> filterMap = maps.get(lang);
+            if (profile != null) {
+                profile.setSource("full scan");
+            }
+            return id -> {
+                if (profile != null) {
+                    profile.count("scanned");
+                }
+                if (filterUntranslated && !isUntranslated(id, srclang, profile)) {
+                    return false;
+                }
+                if (segFilter.isFolded()) {
+                    String folded = foldedTexts.get(lang, id, caseSensitive, ignoreAccents);
+                    if (folded == null) {
+                        Element tuv = filterMap.get(id);
+                        if (profile != null) {
+                            profile.count("tuvsRead");
+                        }
+                        if (tuv == null) {
+                            return false;
+                        }
+                        folded = foldedTexts.put(lang, id, tuv, caseSensitive, ignoreAccents);
+                    } else if (profile != null) {
+                        profile.count("foldedHits");
                     }
-                    result.add(new TUnit(processed + 1, id, map));
+                    return segFilter.matchesFolded(folded);
+                }
+                Element tuv = filterMap.get(id);
+                if (profile != null) {
+                    profile.count("tuvsRead");
+                }
+                if (tuv == null) {
+                    return false;
                 }
-                processed++;
+                if (job.isExpired()) {
+                    return false;
+                }
+                try {
+                    return segFilter.matches(tuv.getChild("seg"));
+                } catch (RegexTimeoutException e) {
+                    job.timedOut(id);
+                    return false;
+                }
+            };
+        }
+        if (filterUntranslated) {
+            String srclang = job.getFilterSrcLanguage().getCode();
+            if (profile != null) {
+                profile.setSource("language presence");
             }
-        } else {
-            throw new IOException("Wrong filtering option");
+            return id -> {
+                if (profile != null) {
+                    profile.count("scanned");
+                }
+                return isUntranslated(id, srclang, profile);
+            };
         }
+        return null;
+    }
 
-        if (sortLanguage != null) {
-            Collections.sort(result, new Comparator<TUnit>() {
+    private boolean isUntranslated(String id, String srclang, QueryProfile profile) {
+        if (profile == null) {
+            return isUntranslated(id, srclang);
+        }
+        long time = System.nanoTime();
+        boolean result = isUntranslated(id, srclang);
+        profile.time("untranslated", time);
+        return result;
+    }
 
-                @Override
-                public int compare(TUnit o1, TUnit o2) {
-                    String s1 = o1.getString(sortLanguage.getCode());
-                    String s2 = o2.getString(sortLanguage.getCode());
-                    if (ascending) {
-                        return s1.compareTo(s2);
-                    }
-                    return s2.compareTo(s1);
-                }
-            });
+    private void finish(FilterJob job, String[] ids, List<Integer> hits) throws IOException {
+        Language sortLanguage = job.getSortLanguage();
+        if (sortLanguage == null) {
+            job.finish(ids, hits);
+            return;
         }
-        if (result.size() < count) {
-            return result;
+        QueryProfile profile = job.getProfile();
+        long time = System.nanoTime();
+        List<Integer> sorted = new ArrayList<>();
+        if (hits == null) {
+            for (int i = 0; i < ids.length; i++) {
+                sorted.add(i);
+            }
+        } else {
+            sorted.addAll(hits);
         }
-        List<TUnit> list = new ArrayList<>();
-        if (result.size() < start + count) {
-            list.addAll(result.subList((int) start, result.size()));
-            return list;
+        String[] keys = new String[ids.length];
+        Iterator<Integer> it = sorted.iterator();
+        while (it.hasNext()) {
+            int position = it.next();
+            keys[position] = getTuv(ids[position], sortLanguage.getCode(), null, false, false, false, job.getProfile());
         }
-        list.addAll(result.subList((int) start, (int) (start + count)));
-        return list;
-    }
+        boolean ascending = job.isAscending();
+        Collections.sort(sorted, new Comparator<Integer>() {
 
-    private String getTuv(String id, String lang, String filterText, boolean caseSensitive, boolean regExp)
-            throws IOException {
-        String result = "";
-        Element tuv = maps.get(lang).get(id);
-        if (tuv != null) {
-            result = TmxUtils.pureText(tuv.getChild("seg"), true, filterText, caseSensitive, regExp);
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                if (ascending) {
+                    return keys[o1].compareTo(keys[o2]);
+                }
+                return keys[o2].compareTo(keys[o1]);
+            }
+        });
+        if (profile != null) {
+            profile.time("sort", time);
         }
-        return result;
+        job.finish(ids, sorted);
     }
 
-    private boolean isUntranslated(String id, String srclang) throws IOException {
-        int count = 0;
+    private TUnit getUnit(String id, long count, SegmentFilter filter, Language filterLanguage,
+            QueryProfile profile) throws IOException {
+        Map<String, String> map = new HashMap<>();
         Iterator<String> it = languages.iterator();
         while (it.hasNext()) {
             String lang = it.next();
-            if (!lang.equals(srclang)) {
-                String seg = getTuv(id, lang, null, false, false);
-                if (!seg.isBlank()) {
-                    count++;
-                }
+            if (filter != null && lang.equals(filterLanguage.getCode())) {
+                map.put(lang, getTuv(id, lang, filter.getFilterText(), filter.isCaseSensitive(),
+                        filter.isIgnoreAccents(), filter.isRegExp(), profile));
+            } else {
+                map.put(lang, getTuv(id, lang, null, false, false, false, profile));
+            }
+        }
+        return new TUnit(count, id, map);
+    }
+
+    private boolean isUntranslated(String id, String srclang) {
+        return !presence.hasOthers(id, srclang);
+    }
+
+    private String getTuv(String id, String lang, String filterText, boolean caseSensitive, boolean ignoreAccents,
+            boolean regExp, QueryProfile profile) throws IOException {
+        RenderedSegment rendered = renders.get(id, lang);
+        if (rendered == null) {
+            Element tuv = maps.get(lang).get(id);
+            if (profile != null) {
+                profile.count("tuvsRead");
             }
+            if (tuv == null) {
+                return "";
+            }
+            long version = renders.getVersion();
+            rendered = TmxUtils.render(tuv.getChild("seg"));
+            renders.put(id, lang, version, rendered);
+            if (profile != null) {
+                profile.count("rendered");
+            }
+        } else if (profile != null) {
+            profile.count("renderHits");
         }
-        return count == 0;
+        return rendered.toHTML(filterText, caseSensitive, ignoreAccents, regExp);
     }
 
     @Override
@@ -260,25 +446,20 @@ public class MapDBStore implements StoreInterface {
             throws IOException, SAXException, ParserConfigurationException {
         Map<String, Element> map = maps.get(lang);
         Element tuv = map.get(id);
+        String before = statisticsText(tuv);
         String text = value;
         if (tuv != null) {
             Element seg = tuv.getChild("seg");
-            TmxUtils.pureText(seg, true, null, false, false);
-            Map<String, String> tags = TmxUtils.getTags();
+            Map<String, String> tags = TmxUtils.render(seg).getTags();
             Set<String> keys = tags.keySet();
             Iterator<String> it = keys.iterator();
             while (it.hasNext()) {
                 String key = it.next();
                 text = TextUtils.replaceAll(text, key, tags.get(key), false);
             }
-            if (builder == null) {
-                builder = new SAXBuilder();
-            }
             try {
-                Document d = builder
-                        .build(new ByteArrayInputStream(("<seg>" + text + "</seg>").getBytes(StandardCharsets.UTF_8)));
-                seg.setContent(d.getRootElement().getContent());
-            } catch (Exception ex) {
+                seg.setContent(SegmentParser.parse(text));
+            } catch (IOException ex) {
                 seg.setText(text);
             }
         } else {
@@ -289,8 +470,10 @@ public class MapDBStore implements StoreInterface {
             seg.setText(text);
             tuv.addContent(seg);
         }
-        map.put(id, tuv);
-        return TmxUtils.pureText(tuv.getChild("seg"), true, null, false, false);
+        storeTuv(lang, id, tuv);
+        updateStatistics(lang, before, tuv);
+        filters.invalidate();
+        return TmxUtils.render(tuv.getChild("seg")).toHTML();
     }
 
     @Override
@@ -312,6 +495,7 @@ public class MapDBStore implements StoreInterface {
                 String lang = langIt.next();
                 Element tuv = maps.get(lang).get(tuid);
                 if (tuv != null) {
+                    tuv.setAttribute("xml:lang", lang);
                     tu.addContent(tuv);
                 }
             }
@@ -354,45 +538,132 @@ public class MapDBStore implements StoreInterface {
     public void delete(List<String> selected) {
         Iterator<String> it = selected.iterator();
         while (it.hasNext()) {
-            delete(it.next());
+            remove(it.next());
+        }
+        if (!selected.isEmpty()) {
+            order.removeAll(new HashSet<>(selected));
         }
     }
 
     private void delete(String id) {
+        remove(id);
+        order.remove(id);
+    }
+
+    private void remove(String id) {
+        Statistics current = statistics;
         Iterator<String> lt = languages.iterator();
         while (lt.hasNext()) {
-            maps.get(lt.next()).remove(id);
+            String lang = lt.next();
+            Element tuv = maps.get(lang).remove(id);
+            if (current != null && tuv != null) {
+                current.remove(lang, makeText(tuv));
+            }
         }
+        foldedTexts.remove(id);
+        filters.invalidate();
+        presence.remove(id);
+        renders.remove(id);
         tus.remove(id);
-        order.remove(id);
     }
 
     @Override
     public void replaceText(String search, String replace, Language language, boolean regExp)
             throws SAXException, IOException, ParserConfigurationException {
-        processed = 0l;
+        processed.set(0l);
         Iterator<String> ut = order.iterator();
         Map<String, Element> langsMap = maps.get(language.getCode());
+        int skipped = 0;
+        boolean changed = false;
         while (ut.hasNext()) {
             String id = ut.next();
             Element tuv = langsMap.get(id);
-            String segText = TmxUtils.textOnly(tuv.getChild("seg"));
-            if (regExp) {
-                TmxUtils.replaceText(tuv.getChild("seg"), search, replace, regExp);
-                langsMap.put(id, tuv);
-            } else {
-                if (segText.indexOf(search) != -1) {
-                    TmxUtils.replaceText(tuv.getChild("seg"), search, replace, regExp);
-                    langsMap.put(id, tuv);
+            if (tuv != null && (regExp || TmxUtils.textOnly(tuv.getChild("seg")).indexOf(search) != -1)) {
+                try {
+                    String before = statisticsText(tuv);
+                    if (TmxUtils.replaceText(tuv.getChild("seg"), search, replace, regExp)) {
+                        storeTuv(language.getCode(), id, tuv);
+                        updateStatistics(language.getCode(), before, tuv);
+                        changed = true;
+                    }
+                } catch (RegexTimeoutException e) {
+                    skipped++;
+                }
+            }
+            processed.incrementAndGet();
+        }
+        if (changed) {
+            filters.invalidate();
+        }
+        if (skipped > 0) {
+            throw new IOException(
+                "Regular expression timed out in " + skipped + " segments that were left unchanged");
+        }
+    }
+
+    @Override
+    public ReplacePreview previewReplace(String search, String replace, Language language, boolean regExp, int limit)
+            throws IOException {
+        processed.set(0l);
+        ReplacePreview preview = new ReplacePreview(limit);
+        Iterator<String> ut = order.iterator();
+        Map<String, Element> langsMap = maps.get(language.getCode());
+        while (ut.hasNext() && langsMap != null) {
+            String id = ut.next();
+            Element tuv = langsMap.get(id);
+            if (tuv != null && (regExp || TmxUtils.textOnly(tuv.getChild("seg")).indexOf(search) != -1)) {
+                Element seg = tuv.getChild("seg");
+                Element copy = new Element();
+                copy.clone(seg);
+                try {
+                    boolean changed = TmxUtils.replaceText(copy, search, replace, regExp);
+                    if (changed && preview.isFull()) {
+                        preview.count();
+                    } else if (changed) {
+                        preview.add(id, TmxUtils.render(seg).toHTML(), TmxUtils.render(copy).toHTML());
+                    }
+                } catch (RegexTimeoutException e) {
+                    preview.timedOut();
                 }
             }
-            processed++;
+            processed.incrementAndGet();
         }
+        return preview;
+    }
+
+    @Override
+    public void batchReplace(Glossary glossary) throws IOException {
+        processed.set(0l);
+        List<String> langs = new ArrayList<>();
+        Iterator<String> lt = glossary.getLanguages().iterator();
+        while (lt.hasNext()) {
+            String lang = lt.next();
+            if (maps.containsKey(lang)) {
+                langs.add(lang);
+                foldedTexts.invalidate(lang);
+            }
+        }
+        filters.invalidate();
+        String[] ids = order.toArray(new String[order.size()]);
+        ParallelFilter.process(ids.length, i -> {
+            String id = ids[i];
+            Iterator<String> it = langs.iterator();
+            while (it.hasNext()) {
+                String lang = it.next();
+                Element tuv = maps.get(lang).get(id);
+                String before = statisticsText(tuv);
+                if (tuv != null && glossary.replace(lang, tuv.getChild("seg"))) {
+                    storeTuv(lang, id, tuv);
+                    updateStatistics(lang, before, tuv);
+                }
+            }
+            processed.incrementAndGet();
+        });
     }
 
     @Override
     public long getProcessed() {
-        return processed;
+        return processed.get();
     }
 
     @Override
@@ -405,11 +676,12 @@ public class MapDBStore implements StoreInterface {
         tu.setAttribute("creationtoolversion", Constants.VERSION);
         tus.put(id, tu);
         order.add(id);
+        filters.invalidate();
     }
 
     @Override
     public long removeUntranslated(Language language) throws IOException {
-        processed = 0l;
+        processed.set(0l);
         List<String> selected = new ArrayList<>();
         String srclang = language.getCode();
         Iterator<String> ut = order.iterator();
@@ -418,7 +690,7 @@ public class MapDBStore implements StoreInterface {
             if (isUntranslated(id, srclang)) {
                 selected.add(id);
             }
-            processed++;
+            processed.incrementAndGet();
         }
         long result = selected.size();
         Iterator<String> it = selected.iterator();
@@ -430,14 +702,14 @@ public class MapDBStore implements StoreInterface {
     }
 
     @Override
-    public void removeSameAsSource(Language language)
-            throws IOException, SAXException, ParserConfigurationException {
-        processed = 0l;
-        List<String> selected = new ArrayList<>();
+    public void removeSameAsSource(Language language) throws IOException {
+        processed.set(0l);
+        filters.invalidate();
         String srclang = language.getCode();
-        Iterator<String> ut = order.iterator();
-        while (ut.hasNext()) {
-            String tuid = ut.next();
+        String[] ids = order.toArray(new String[order.size()]);
+        boolean[] selected = new boolean[ids.length];
+        ParallelFilter.process(ids.length, i -> {
+            String tuid = ids[i];
             Element srcTuv = maps.get(srclang).get(tuid);
             if (srcTuv != null) {
                 Element src = srcTuv.getChild("seg");
@@ -450,36 +722,32 @@ public class MapDBStore implements StoreInterface {
                         if (tuv != null) {
                             Element tgt = tuv.getChild("seg");
                             if (src.equals(tgt)) {
-                                maps.get(lang).remove(tuid);
+                                updateStatistics(lang, statisticsText(tuv), null);
+                                removeTuv(lang, tuid);
                             } else {
                                 count++;
                             }
                         }
                     }
                 }
-                if (count == 0) {
-                    selected.add(tuid);
-                }
+                selected[i] = count == 0;
+            }
+            processed.incrementAndGet();
+        });
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (selected[i]) {
+                list.add(ids[i]);
             }
-            processed++;
-        }
-        Iterator<String> it = selected.iterator();
-        while (it.hasNext()) {
-            delete(it.next());
         }
-        selected.clear();
+        delete(list);
     }
 
     @Override
     public void addLanguage(Language language) throws IOException {
         String lang = language.getCode();
         if (!languages.contains(lang)) {
-            languages.add(lang);
-            File database = new File(workFolder, "mapdb");
-            DB langdb = DBMaker.newFileDB(new File(database, lang)).closeOnJvmShutdown().asyncWriteEnable().deleteFilesAfterClose().make();
-            tuvDatabases.put(lang, langdb);
-            maps.put(lang, langdb.getTreeMap("tuvMap"));
-            languages.add(lang);
+            createLanguage(lang);
         }
     }
 
@@ -487,7 +755,13 @@ public class MapDBStore implements StoreInterface {
     public void removeLanguage(Language language) throws IOException {
         String lang = language.getCode();
         if (languages.contains(lang)) {
-            maps.get(lang).clear();
+            foldedTexts.invalidate(lang);
+            filters.invalidate();
+            presence.removeLanguage(lang);
+            renders.invalidate(lang);
+            if (statistics != null) {
+                statistics.removeLanguage(lang);
+            }
             maps.remove(lang);
             tuvDatabases.get(lang).close();
             tuvDatabases.remove(lang);
@@ -496,11 +770,13 @@ public class MapDBStore implements StoreInterface {
     }
 
     @Override
-    public void removeTags() throws SAXException, IOException, ParserConfigurationException {
-        processed = 0l;
-        Iterator<String> ut = order.iterator();
-        while (ut.hasNext()) {
-            String id = ut.next();
+    public void removeTags() throws IOException {
+        processed.set(0l);
+        foldedTexts.invalidate();
+        filters.invalidate();
+        String[] ids = order.toArray(new String[order.size()]);
+        ParallelFilter.process(ids.length, i -> {
+            String id = ids[i];
             Iterator<String> it = languages.iterator();
             while (it.hasNext()) {
                 String lang = it.next();
@@ -509,105 +785,163 @@ public class MapDBStore implements StoreInterface {
                     Element seg = tuv.getChild("seg");
                     if (!seg.getChildren().isEmpty()) {
                         seg.setText(TmxUtils.textOnly(seg));
-                        maps.get(lang).put(id, tuv);
+                        storeTuv(lang, id, tuv);
                     }
                 }
             }
-            processed++;
-        }
+            processed.incrementAndGet();
+        });
     }
 
     @Override
     public void changeLanguage(Language oldLanguage, Language newLanguage)
             throws IOException, SAXException, ParserConfigurationException {
-        Map<String, Element> oldMap = maps.get(oldLanguage.getCode());
-		String newCode = newLanguage.getCode();
-		if (!languages.contains(newCode)) {
-			addLanguage(newLanguage);
-		}
-		Map<String, Element> newMap = maps.get(newCode);
-		Set<String> keySet = oldMap.keySet();
-		Iterator<String> it = keySet.iterator();
-		while (it.hasNext()) {
-			String id = it.next();
-			Element tuv = oldMap.get(id);
-			tuv.setAttribute("xml:lang", newCode);
-			newMap.put(id, tuv);
-			processed++;
-		}
-		removeLanguage(oldLanguage);
-    }
-
-    @Override
-    public void removeDuplicates() throws SAXException, IOException, ParserConfigurationException {
-        List<String> langs = new ArrayList<>();
-        Iterator<String> it = languages.iterator();
-        while (it.hasNext()) {
-            langs.add(it.next());
-        }
-        for (int m = 0; m < langs.size() - 1; m++) {
-            String srcLang = langs.get(m);
-            List<Pair> pairs = new ArrayList<>();
-            Map<String, Element> map = maps.get(srcLang);
-            Set<String> keySet = map.keySet();
-            it = keySet.iterator();
-            while (it.hasNext()) {
-                String id = it.next();
-                String text = makeText(map.get(id));
-                if (!text.isEmpty()) {
-                    Pair p = new Pair(id, text);
-                    pairs.add(p);
-                }
-            }
-            Collections.sort(pairs);
-
-            processed = 0l;
-            Set<String> deleteLater = new TreeSet<>();
-            for (int i = 0; i < pairs.size() - 1; i++) {
-                String currentId = pairs.get(i).getId();
-                for (int j = i + 1; j < pairs.size(); j++) {
-                    if (!pairs.get(i).getText().equals(pairs.get(j).getText())) {
-                        break;
-                    }
-                    String secondId = pairs.get(j).getId();
-                    if (deleteLater.contains(secondId)) {
-                        continue;
-                    }
-                    Iterator<String> lt = languages.iterator();
-                    boolean repeated = true;
-                    while (lt.hasNext()) {
-                        String lang = lt.next();
-                        Element a = maps.get(lang).get(currentId);
-                        Element b = maps.get(lang).get(secondId);
-                        if (a != null) {
-                            if (b == null) {
-                                repeated = false;
-                                break;
-                            }
-                            Element segA = a.getChild("seg");
-                            Element segB = b.getChild("seg");
-                            if (!segA.equals(segB)) {
-                                repeated = false;
-                                break;
-                            }
-                        } else {
-                            if (b != null) {
-                                repeated = false;
-                                break;
-                            }
-                        }
-                    }
-                    if (repeated) {
-                        deleteLater.add(secondId);
-                    }
+        String oldCode = oldLanguage.getCode();
+        String newCode = newLanguage.getCode();
+        if (oldCode.equals(newCode) || !languages.contains(oldCode)) {
+            return;
+        }
+        if (!languages.contains(newCode)) {
+            foldedTexts.invalidate(oldCode);
+            foldedTexts.invalidate(newCode);
+            filters.invalidate();
+            presence.changeLanguage(oldCode, newCode);
+            if (statistics != null) {
+                statistics.changeLanguage(oldCode, newCode);
+            }
+            renders.invalidate(oldCode);
+            renders.invalidate(newCode);
+            maps.put(newCode, maps.remove(oldCode));
+            tuvDatabases.put(newCode, tuvDatabases.remove(oldCode));
+            languages.add(newCode);
+            languages.remove(oldCode);
+            return;
+        }
+        if (statistics != null) {
+            statistics.discard();
+            statistics = null;
+        }
+        Map<String, Element> oldMap = maps.get(oldCode);
+        foldedTexts.invalidate(newCode);
+        filters.invalidate();
+        String[] ids = oldMap.keySet().toArray(new String[0]);
+        ParallelFilter.process(ids.length, i -> {
+            Element tuv = oldMap.get(ids[i]);
+            tuv.setAttribute("xml:lang", newCode);
+            storeTuv(newCode, ids[i], tuv);
+            processed.incrementAndGet();
+        });
+        removeLanguage(oldLanguage);
+    }
+
+    @Override
+    public void removeDuplicates() throws IOException {
+        processed.set(0l);
+        MessageDigest digest = getDigest();
+        FingerprintSet seen = new FingerprintSet();
+        List<String> repeated = new ArrayList<>();
+        try {
+            Iterator<String> ut = order.iterator();
+            while (ut.hasNext()) {
+                String id = ut.next();
+                byte[] fingerprint = fingerprint(getTuvs(id), digest);
+                if (fingerprint != null && !seen.add(fingerprint)) {
+                    repeated.add(id);
                 }
-                processed++;
+                processed.incrementAndGet();
             }
+        } finally {
+            seen.close();
+        }
+        delete(repeated);
+    }
+
+    @Override
+    public NearDuplicates findNearDuplicates(Language srcLang, double threshold) throws IOException {
+        processed.set(0l);
+        String[] ids = order.toArray(new String[order.size()]);
+        NearDuplicates near = new NearDuplicates(ids, threshold, processed);
+        Map<String, Element> map = maps.get(srcLang.getCode());
+        if (map == null) {
+            throw new IOException("Unknown language: " + srcLang.getCode());
+        }
+        near.run(id -> makeText(map.get(id)));
+        processed.set(ids.length);
+        return near;
+    }
+
+    private static MessageDigest getDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private Map<String, Element> getTuvs(String id) {
+        Map<String, Element> tuvs = new HashMap<>();
+        Iterator<String> lt = languages.iterator();
+        while (lt.hasNext()) {
+            String lang = lt.next();
+            tuvs.put(lang, maps.get(lang).get(id));
+        }
+        return tuvs;
+    }
 
-            Iterator<String> idlt = deleteLater.iterator();
-            while (idlt.hasNext()) {
-                delete(idlt.next());
+    private byte[] fingerprint(Map<String, Element> tuvs, MessageDigest digest) {
+        digest.reset();
+        boolean hasText = false;
+        int count = 0;
+        Iterator<String> lt = languages.iterator();
+        while (lt.hasNext()) {
+            String lang = lt.next();
+            Element tuv = tuvs.get(lang);
+            digest.update(lang.getBytes(StandardCharsets.UTF_8));
+            if (tuv == null) {
+                digest.update((byte) 0);
+            } else {
+                Element seg = tuv.getChild("seg");
+                digest.update((byte) 1);
+                digest.update(String.valueOf(seg).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                if (!hasText && count < languages.size() - 1) {
+                    hasText = !makeText(tuv).isEmpty();
+                }
             }
+            count++;
+        }
+        return hasText ? digest.digest() : null;
+    }
+
+    @Override
+    public synchronized Statistics getStatistics() throws IOException {
+        if (statistics == null) {
+            processed.set(0l);
+            Statistics result = new Statistics();
+            String[] ids = order.toArray(new String[order.size()]);
+            String[] langs = languages.toArray(new String[languages.size()]);
+            ParallelFilter.process(ids.length, i -> {
+                for (int j = 0; j < langs.length; j++) {
+                    Element tuv = maps.get(langs[j]).get(ids[i]);
+                    if (tuv != null) {
+                        result.add(langs[j], makeText(tuv));
+                    }
+                }
+                processed.incrementAndGet();
+            });
+            statistics = result;
+        }
+        return statistics;
+    }
+
+    private String statisticsText(Element tuv) {
+        return statistics == null ? null : makeText(tuv);
+    }
+
+    private void updateStatistics(String lang, String before, Element tuv) {
+        Statistics current = statistics;
+        if (current != null && before != null) {
+            current.replace(lang, before, makeText(tuv));
         }
     }
 
@@ -620,11 +954,13 @@ public class MapDBStore implements StoreInterface {
     }
 
     @Override
-    public void removeSpaces() throws SAXException, IOException, ParserConfigurationException {
-        processed = 0l;
-        Iterator<String> ut = order.iterator();
-        while (ut.hasNext()) {
-            String id = ut.next();
+    public void removeSpaces() throws IOException {
+        processed.set(0l);
+        foldedTexts.invalidate();
+        filters.invalidate();
+        String[] ids = order.toArray(new String[order.size()]);
+        ParallelFilter.process(ids.length, i -> {
+            String id = ids[i];
             Iterator<String> it = languages.iterator();
             while (it.hasNext()) {
                 String lang = it.next();
@@ -632,70 +968,173 @@ public class MapDBStore implements StoreInterface {
                 if (tuv != null) {
                     Element seg = tuv.getChild("seg");
                     if (seg != null) {
-                        seg.setContent(TmxUtils.stripSegment(seg).getContent());
-                        if (!seg.getText().isEmpty()) {
-                            maps.get(lang).put(id, tuv);
-                        } else {
-                            maps.get(lang).remove(id);
+                        String before = statisticsText(tuv);
+                        boolean changed = TmxUtils.stripSegment(seg);
+                        if (seg.getText().isEmpty()) {
+                            removeTuv(lang, id);
+                            updateStatistics(lang, before, null);
+                        } else if (changed) {
+                            storeTuv(lang, id, tuv);
+                            updateStatistics(lang, before, tuv);
                         }
                     }
                 }
             }
-            processed++;
-        }
+            processed.incrementAndGet();
+        });
     }
 
     @Override
-    public void consolidateUnits(Language language)
-            throws IOException, SAXException, ParserConfigurationException {
-        processed = 0l;
+    public void consolidateUnits(Language language) throws IOException {
+        processed.set(0l);
+        foldedTexts.invalidate();
+        filters.invalidate();
         String srcLang = language.getCode();
-        List<Pair> pairs = new ArrayList<>();
         Map<String, Element> map = maps.get(srcLang);
-        Set<String> keySet = map.keySet();
-        Iterator<String> it = keySet.iterator();
-        while (it.hasNext()) {
-            String id = it.next();
-            String text = makeText(map.get(id));
-            if (!text.isEmpty()) {
-                Pair p = new Pair(id, text);
-                pairs.add(p);
+        String[] ids = order.toArray(new String[order.size()]);
+        FingerprintSet.Fingerprint[] fingerprints = new FingerprintSet.Fingerprint[ids.length];
+        Map<FingerprintSet.Fingerprint, Integer> leaders = new ConcurrentHashMap<>();
+        boolean[] candidates = new boolean[ids.length];
+        ParallelFilter.forEach(ids.length, i -> {
+            Element tuv = map.get(ids[i]);
+            if (!makeText(tuv).isEmpty()) {
+                fingerprints[i] = FingerprintSet.fingerprint(tuv.getChild("seg").toString());
+                leaders.merge(fingerprints[i], i, Math::min);
+            }
+            candidates[i] = isUntranslated(ids[i], srcLang);
+        });
+        for (int i = 0; i < ids.length; i++) {
+            if (fingerprints[i] != null) {
+                int leader = leaders.get(fingerprints[i]);
+                if (leader != i) {
+                    moveTuvs(ids[i], ids[leader], srcLang);
+                    candidates[i] = true;
+                }
             }
+            processed.incrementAndGet();
         }
-        Collections.sort(pairs);
-        int i = 0;
-        while (i < pairs.size() - 1) {
-            Pair currentPair = pairs.get(i);
-            Element currentSeg = map.get(currentPair.getId()).getChild("seg");
-            int j = 1;
-            Pair nextPair = pairs.get(i + j);
-            while (currentPair.getText().equals(nextPair.getText())) {
-                Element nextSeg = map.get(nextPair.getId()).getChild("seg");
-                if (currentSeg.equals(nextSeg)) {
-                    Iterator<String> lt = languages.iterator();
-                    while (lt.hasNext()) {
-                        String lang = lt.next();
-                        if (lang.equals(srcLang)) {
-                            continue;
-                        }
-                        Element a = maps.get(lang).get(currentPair.getId());
-                        Element b = maps.get(lang).get(nextPair.getId());
-                        if (a == null && b != null) {
-                            maps.get(lang).put(currentPair.getId(), b);
-                            maps.get(lang).remove(nextPair.getId());
-                        }
+        List<String> selected = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (candidates[i] && isUntranslated(ids[i], srcLang)) {
+                selected.add(ids[i]);
+            }
+        }
+        delete(selected);
+    }
+
+    @Override
+    public void processTasks(MaintenanceTasks tasks)
+            throws IOException, SAXException, ParserConfigurationException {
+        processed.set(0l);
+        foldedTexts.invalidate();
+        filters.invalidate();
+        String srcLang = tasks.getSrcLang();
+        MessageDigest digest = getDigest();
+        FingerprintSet seen = tasks.isDuplicates() ? new FingerprintSet() : null;
+        Map<FingerprintSet.Fingerprint, String> leaders = new HashMap<>();
+        Map<String, String> members = new LinkedHashMap<>();
+        List<String> candidates = new ArrayList<>();
+        Set<String> selected = new LinkedHashSet<>();
+        String[] ids = order.toArray(new String[order.size()]);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                String id = ids[i];
+                Map<String, Element> tuvs = new HashMap<>();
+                Iterator<String> lt = languages.iterator();
+                while (lt.hasNext()) {
+                    String lang = lt.next();
+                    Element tuv = maps.get(lang).get(id);
+                    tuvs.put(lang, tuv == null ? null : cleanTuv(lang, id, tuv, tasks));
+                }
+                processed.incrementAndGet();
+                if (tasks.isUntranslated() && isUntranslated(id, srcLang)) {
+                    selected.add(id);
+                    continue;
+                }
+                if (seen != null) {
+                    byte[] fingerprint = fingerprint(tuvs, digest);
+                    if (fingerprint != null && !seen.add(fingerprint)) {
+                        selected.add(id);
+                        continue;
                     }
                 }
-                j++;
-                if (i + j >= pairs.size()) {
-                    break;
+                if (tasks.isConsolidate()) {
+                    if (isUntranslated(id, srcLang)) {
+                        candidates.add(id);
+                    }
+                    Element srcTuv = tuvs.get(srcLang);
+                    if (!makeText(srcTuv).isEmpty()) {
+                        String leader = leaders.putIfAbsent(
+                                FingerprintSet.fingerprint(srcTuv.getChild("seg").toString()), id);
+                        if (leader != null) {
+                            members.put(id, leader);
+                        }
+                    }
                 }
-                nextPair = pairs.get(i + j);
             }
-            i = i + j;
-            processed++;
+        } finally {
+            if (seen != null) {
+                seen.close();
+            }
+        }
+        Iterator<Map.Entry<String, String>> mt = members.entrySet().iterator();
+        while (mt.hasNext()) {
+            Map.Entry<String, String> entry = mt.next();
+            moveTuvs(entry.getKey(), entry.getValue(), srcLang);
+            candidates.add(entry.getKey());
+        }
+        Iterator<String> ct = candidates.iterator();
+        while (ct.hasNext()) {
+            String id = ct.next();
+            if (isUntranslated(id, srcLang)) {
+                selected.add(id);
+            }
+        }
+        delete(new ArrayList<>(selected));
+    }
+
+    private Element cleanTuv(String lang, String id, Element tuv, MaintenanceTasks tasks) {
+        Element seg = tuv.getChild("seg");
+        if (seg == null) {
+            return tuv;
+        }
+        String before = statisticsText(tuv);
+        boolean changed = false;
+        if (tasks.isTags() && !seg.getChildren().isEmpty()) {
+            seg.setText(TmxUtils.textOnly(seg));
+            changed = true;
+        }
+        if (tasks.isSpaces()) {
+            if (TmxUtils.stripSegment(seg)) {
+                changed = true;
+            }
+            if (seg.getText().isEmpty()) {
+                removeTuv(lang, id);
+                updateStatistics(lang, before, null);
+                return null;
+            }
+        }
+        if (changed) {
+            storeTuv(lang, id, tuv);
+            updateStatistics(lang, before, tuv);
+        }
+        return tuv;
+    }
+
+    private void moveTuvs(String source, String target, String srcLang) {
+        Iterator<String> lt = languages.iterator();
+        while (lt.hasNext()) {
+            String lang = lt.next();
+            if (lang.equals(srcLang)) {
+                continue;
+            }
+            Map<String, Element> map = maps.get(lang);
+            Element tuv = map.get(source);
+            if (tuv != null && map.get(target) == null) {
+                storeTuv(lang, target, tuv);
+                removeTuv(lang, source);
+            }
         }
-        removeUntranslated(language);
     }
 
     @Override
@@ -870,6 +1309,9 @@ public class MapDBStore implements StoreInterface {
     public Element getTuv(String id, String lang) throws IOException {
         Map<String, Element> map = maps.get(lang);
         Element tuv = map.get(id);
+        if (tuv != null) {
+            tuv.setAttribute("xml:lang", lang);
+        }
         return tuv;
     }
 
@@ -65,8 +65,34 @@ public class MergeStore implements StoreInterface {
 
 	@Override
 	public List<TUnit> getUnits(long start, int count, String filterText, Language filterLanguage,
-			boolean caseSensitiveFilter, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
-			Language sortLanguage, boolean ascending) {
+			boolean caseSensitiveFilter, boolean ignoreAccents, boolean filterUntranslated, boolean regExp,
+			Language filterSrcLanguage, Language sortLanguage, boolean ascending) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public long countUnits(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) {
+		return 0l;
+	}
+
+	@Override
+	public FilterJob submitQuery(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+			Language sortLanguage, boolean ascending) throws IOException {
+		FilterJob job = new FilterJob(filterText, filterLanguage, caseSensitiveFilter, ignoreAccents,
+				filterUntranslated, regExp, filterSrcLanguage, sortLanguage, ascending);
+		job.finish(new String[0], new ArrayList<>());
+		return job;
+	}
+
+	@Override
+	public void runQuery(FilterJob job) {
+		job.finish(new String[0], new ArrayList<>());
+	}
+
+	@Override
+	public List<TUnit> getUnits(FilterJob job, long start, int count) {
 		return new ArrayList<>();
 	}
 
@@ -120,6 +146,17 @@ public class MergeStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public ReplacePreview previewReplace(String search, String replace, Language language, boolean regExp,
+			int limit) {
+		return new ReplacePreview(limit);
+	}
+
+	@Override
+	public void batchReplace(Glossary glossary) {
+		// do nothing
+	}
+
 	@Override
 	public long getProcessed() {
 		return 0l;
@@ -165,6 +202,16 @@ public class MergeStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public NearDuplicates findNearDuplicates(Language srcLang, double threshold) {
+		return new NearDuplicates(new String[0], threshold);
+	}
+
+	@Override
+	public Statistics getStatistics() {
+		return new Statistics();
+	}
+
 	@Override
 	public void removeSpaces() {
 		// do nothing
@@ -175,6 +222,11 @@ public class MergeStore implements StoreInterface {
 		// do nothing
 	}
 
+	@Override
+	public void processTasks(MaintenanceTasks tasks) {
+		// do nothing
+	}
+
 	@Override
 	public void setTuAttributes(String id, List<String[]> attributes) {
 		// do nothing
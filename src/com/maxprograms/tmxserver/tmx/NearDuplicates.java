@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class NearDuplicates {
+
+	public static final int HASHES = 64;
+	private static final int SHINGLE = 4;
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int BYTES_PER_UNIT = HASHES * 2 + 8 + 4 + 4 + 1;
+	private static final long[] SEEDS = new long[HASHES];
+
+	static {
+		long seed = 0x9E3779B97F4A7C15l;
+		for (int i = 0; i < HASHES; i++) {
+			seed = mix(seed + i);
+			SEEDS[i] = seed;
+		}
+	}
+
+	private double threshold;
+	private int bands;
+	private int rows;
+	private String[] ids;
+	private short[][] signatures;
+	private boolean[] empty;
+	private int[] parent;
+	private AtomicLong processed;
+	private List<List<String>> clusters;
+
+	public NearDuplicates(String[] ids, double threshold) {
+		this(ids, threshold, new AtomicLong());
+	}
+
+	public NearDuplicates(String[] ids, double threshold, AtomicLong processed) {
+		this.ids = ids;
+		this.threshold = threshold;
+		rows = 1;
+		for (int r = 2; r <= HASHES; r *= 2) {
+			if (Math.pow(1.0 / (HASHES / r), 1.0 / r) <= threshold) {
+				rows = r;
+			}
+		}
+		bands = HASHES / rows;
+		this.processed = processed;
+		clusters = new ArrayList<>();
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public List<List<String>> getClusters() {
+		return clusters;
+	}
+
+	public void run(Function<String, String> texts) throws IOException {
+		int n = ids.length;
+		Runtime runtime = Runtime.getRuntime();
+		long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		if ((long) n * BYTES_PER_UNIT > available) {
+			throw new IOException("Not enough memory to compare " + n + " units");
+		}
+		signatures = new short[(n + PAGE_MASK) >>> PAGE_BITS][];
+		for (int page = 0; page < signatures.length; page++) {
+			signatures[page] = new short[Math.min(PAGE_SIZE, n - (page << PAGE_BITS)) * HASHES];
+		}
+		empty = new boolean[n];
+		ParallelFilter.forEach(n, i -> {
+			sign(i, texts.apply(ids[i]));
+			processed.incrementAndGet();
+		});
+		parent = new int[n];
+		for (int i = 0; i < n; i++) {
+			parent[i] = i;
+		}
+		long[] keys = new long[n];
+		for (int band = 0; band < bands; band++) {
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				if (!empty[i]) {
+					keys[count++] = ((long) bandHash(i, band) << 32) | i;
+				}
+			}
+			Arrays.parallelSort(keys, 0, count);
+			int start = 0;
+			while (start < count) {
+				int end = start + 1;
+				while (end < count && keys[end] >>> 32 == keys[start] >>> 32) {
+					end++;
+				}
+				int leader = (int) keys[start];
+				for (int j = start + 1; j < end; j++) {
+					int member = (int) keys[j];
+					if (find(leader) != find(member) && similarity(leader, member) >= threshold) {
+						union(leader, member);
+					}
+				}
+				start = end;
+			}
+		}
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++) {
+			sizes[find(i)]++;
+		}
+		Map<Integer, List<String>> groups = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			int root = find(i);
+			if (sizes[root] > 1) {
+				groups.computeIfAbsent(root, k -> new ArrayList<>()).add(ids[i]);
+			}
+		}
+		clusters.addAll(groups.values());
+		clusters.sort((a, b) -> Integer.compare(b.size(), a.size()));
+		signatures = null;
+		parent = null;
+	}
+
+	public double similarity(int a, int b) {
+		int same = 0;
+		short[] pageA = signatures[a >>> PAGE_BITS];
+		short[] pageB = signatures[b >>> PAGE_BITS];
+		int offsetA = (a & PAGE_MASK) * HASHES;
+		int offsetB = (b & PAGE_MASK) * HASHES;
+		for (int i = 0; i < HASHES; i++) {
+			if (pageA[offsetA + i] == pageB[offsetB + i]) {
+				same++;
+			}
+		}
+		return (double) same / HASHES;
+	}
+
+	public JSONObject toJSON(int limit) {
+		JSONObject json = new JSONObject();
+		json.put("threshold", threshold);
+		json.put("bands", bands);
+		json.put("rows", rows);
+		json.put("clusterCount", clusters.size());
+		long units = 0l;
+		JSONArray array = new JSONArray();
+		for (int i = 0; i < clusters.size(); i++) {
+			List<String> cluster = clusters.get(i);
+			units += cluster.size();
+			if (i < limit) {
+				array.put(new JSONArray(cluster));
+			}
+		}
+		json.put("units", units);
+		json.put("clusters", array);
+		return json;
+	}
+
+	private int bandHash(int unit, int band) {
+		long h = band;
+		short[] page = signatures[unit >>> PAGE_BITS];
+		int offset = (unit & PAGE_MASK) * HASHES + band * rows;
+		for (int i = 0; i < rows; i++) {
+			h = h * 31 + page[offset + i];
+		}
+		long mixed = mix(h);
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	private int find(int i) {
+		int root = i;
+		while (parent[root] != root) {
+			root = parent[root];
+		}
+		int node = i;
+		while (parent[node] != root) {
+			int next = parent[node];
+			parent[node] = root;
+			node = next;
+		}
+		return root;
+	}
+
+	private void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		} else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+
+	private void sign(int unit, String text) {
+		String normal = text == null ? "" : normalize(text);
+		if (normal.isEmpty()) {
+			empty[unit] = true;
+			return;
+		}
+		long[] min = new long[HASHES];
+		Arrays.fill(min, Long.MAX_VALUE);
+		int last = Math.max(1, normal.length() - SHINGLE + 1);
+		for (int start = 0; start < last; start++) {
+			int end = Math.min(normal.length(), start + SHINGLE);
+			long h = 0xcbf29ce484222325l;
+			for (int i = start; i < end; i++) {
+				h = (h ^ normal.charAt(i)) * 0x100000001b3l;
+			}
+			for (int i = 0; i < HASHES; i++) {
+				long value = mix(h ^ SEEDS[i]);
+				if (value < min[i]) {
+					min[i] = value;
+				}
+			}
+		}
+		short[] page = signatures[unit >>> PAGE_BITS];
+		int offset = (unit & PAGE_MASK) * HASHES;
+		for (int i = 0; i < HASHES; i++) {
+			page[offset + i] = (short) min[i];
+		}
+	}
+
+	public static String normalize(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean space = true;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetter(c)) {
+				sb.append(Character.toLowerCase(c));
+				space = false;
+			} else if (Character.isDigit(c)) {
+				if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '0') {
+					sb.append('0');
+				}
+				space = false;
+			} else if (!space) {
+				sb.append(' ');
+				space = true;
+			}
+		}
+		int length = sb.length();
+		if (length > 0 && sb.charAt(length - 1) == ' ') {
+			sb.setLength(length - 1);
+		}
+		return sb.toString();
+	}
+
+	private static long mix(long value) {
+		long z = value;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9l;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebl;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+public class ParallelFilter extends RecursiveTask<List<Integer>> {
+
+	private static final long serialVersionUID = 4166346358207187453L;
+	private static final int THRESHOLD = 2048;
+	public static final int CHUNK_SIZE = 8 * THRESHOLD;
+	private static ForkJoinPool pool;
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private transient String[] ids;
+	private transient Predicate<String> predicate;
+	private int from;
+	private int to;
+
+	private ParallelFilter(String[] ids, int from, int to, Predicate<String> predicate) {
+		this.ids = ids;
+		this.from = from;
+		this.to = to;
+		this.predicate = predicate;
+	}
+
+	public static List<Integer> filter(String[] ids, Predicate<String> predicate) {
+		return filter(ids, 0, ids.length, predicate);
+	}
+
+	public static List<Integer> filter(String[] ids, int from, int to, Predicate<String> predicate) {
+		return getFilterPool().invoke(new ParallelFilter(ids, from, to, predicate));
+	}
+
+	public static void forEach(int size, IntConsumer consumer) {
+		getFilterPool().invoke(new Each(0, size, consumer));
+	}
+
+	public static void process(int size, Step step) throws IOException {
+		try {
+			forEach(size, i -> {
+				try {
+					step.apply(i);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			});
+		} catch (CompletionException e) {
+			Throwable cause = e;
+			while (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+
+	public static synchronized void setParallelism(int threads) {
+		int value = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		if (value != parallelism) {
+			parallelism = value;
+			if (pool != null) {
+				pool.shutdown();
+				pool = null;
+			}
+		}
+	}
+
+	public static synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	protected static synchronized ForkJoinPool getFilterPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	@Override
+	protected List<Integer> compute() {
+		if (to - from <= THRESHOLD) {
+			List<Integer> hits = new ArrayList<>();
+			for (int i = from; i < to; i++) {
+				if (predicate.test(ids[i])) {
+					hits.add(i);
+				}
+			}
+			return hits;
+		}
+		int middle = (from + to) >>> 1;
+		ParallelFilter left = new ParallelFilter(ids, from, middle, predicate);
+		ParallelFilter right = new ParallelFilter(ids, middle, to, predicate);
+		left.fork();
+		List<Integer> hits = right.compute();
+		List<Integer> result = left.join();
+		result.addAll(hits);
+		return result;
+	}
+
+	private static class Each extends RecursiveAction {
+
+		private static final long serialVersionUID = -3412558470151183170L;
+
+		private transient IntConsumer consumer;
+		private int from;
+		private int to;
+
+		Each(int from, int to, IntConsumer consumer) {
+			this.from = from;
+			this.to = to;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					consumer.accept(i);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Each(from, middle, consumer), new Each(middle, to, consumer));
+		}
+	}
+
+	public interface Step {
+		void apply(int index) throws Exception;
+	}
+}
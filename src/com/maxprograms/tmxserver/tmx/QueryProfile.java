@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+public class QueryProfile {
+
+	private String source;
+	private Map<String, LongAdder> counters;
+	private Map<String, LongAdder> phases;
+
+	public QueryProfile() {
+		source = "none";
+		counters = new ConcurrentHashMap<>();
+		phases = new ConcurrentHashMap<>();
+	}
+
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public void count(String counter) {
+		count(counter, 1);
+	}
+
+	public void count(String counter, long value) {
+		counters.computeIfAbsent(counter, k -> new LongAdder()).add(value);
+	}
+
+	public void time(String phase, long start) {
+		phases.computeIfAbsent(phase, k -> new LongAdder()).add(System.nanoTime() - start);
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("source", source);
+		JSONObject counts = new JSONObject();
+		Iterator<Entry<String, LongAdder>> it = counters.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<String, LongAdder> entry = it.next();
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		json.put("counters", counts);
+		JSONObject times = new JSONObject();
+		it = phases.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<String, LongAdder> entry = it.next();
+			times.put(entry.getKey(), entry.getValue().sum() / 1000000.0);
+		}
+		json.put("phases", times);
+		return json;
+	}
+}
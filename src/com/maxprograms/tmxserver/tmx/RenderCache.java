@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RenderCache {
+
+	private static final int SIZE = 2048;
+
+	private Map<String, Map<String, RenderedSegment>> units;
+	private long version;
+
+	public RenderCache() {
+		units = new LinkedHashMap<>(SIZE, 0.75f, true) {
+
+			private static final long serialVersionUID = 5384915067419512402L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<String, RenderedSegment>> eldest) {
+				return size() > SIZE;
+			}
+		};
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	public synchronized RenderedSegment get(String id, String lang) {
+		Map<String, RenderedSegment> unit = units.get(id);
+		return unit == null ? null : unit.get(lang);
+	}
+
+	public synchronized void put(String id, String lang, long version, RenderedSegment rendered) {
+		if (version == this.version) {
+			units.computeIfAbsent(id, k -> new HashMap<>()).put(lang, rendered);
+		}
+	}
+
+	public synchronized void remove(String id, String lang) {
+		version++;
+		Map<String, RenderedSegment> unit = units.get(id);
+		if (unit != null) {
+			unit.remove(lang);
+		}
+	}
+
+	public synchronized void remove(String id) {
+		version++;
+		units.remove(id);
+	}
+
+	public synchronized void invalidate(String lang) {
+		version++;
+		Iterator<Map<String, RenderedSegment>> it = units.values().iterator();
+		while (it.hasNext()) {
+			it.next().remove(lang);
+		}
+	}
+
+	public synchronized void invalidate() {
+		version++;
+		units.clear();
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.maxprograms.tmxserver.utils.PatternCache;
+import com.maxprograms.tmxserver.utils.TextUtils;
+
+public class RenderedSegment {
+
+	private List<String> parts;
+	private List<Boolean> texts;
+	private Map<String, String> tags;
+	private String html;
+
+	public RenderedSegment() {
+		parts = new ArrayList<>();
+		texts = new ArrayList<>();
+		tags = new HashMap<>();
+	}
+
+	public void addText(String text) {
+		parts.add(text);
+		texts.add(true);
+		html = null;
+	}
+
+	public void addTag(String code, String image) {
+		tags.put("[[" + (tags.size() + 1) + "]]", code);
+		parts.add(image);
+		texts.add(false);
+		html = null;
+	}
+
+	public int getTagCount() {
+		return tags.size();
+	}
+
+	public Map<String, String> getTags() {
+		return tags;
+	}
+
+	public String toHTML() {
+		if (html == null) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < parts.size(); i++) {
+				sb.append(texts.get(i) ? TextUtils.cleanString(parts.get(i)) : parts.get(i));
+			}
+			html = sb.toString();
+		}
+		return html;
+	}
+
+	public String toHTML(String filterText, boolean caseSensitive, boolean ignoreAccents, boolean regExp) {
+		if (filterText == null) {
+			return toHTML();
+		}
+		if (regExp) {
+			Pattern pattern = PatternCache.get(filterText);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < parts.size(); i++) {
+				sb.append(texts.get(i) ? TmxUtils.highlight(pattern, parts.get(i), true) : parts.get(i));
+			}
+			return sb.toString();
+		}
+		return toHTML(new TermHighlighter(List.of(filterText), caseSensitive, ignoreAccents));
+	}
+
+	public String toHTML(TermHighlighter highlighter) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < parts.size(); i++) {
+			sb.append(texts.get(i) ? highlighter.highlight(parts.get(i)) : parts.get(i));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+public class ReplacePreview {
+
+	private int limit;
+	private long affected;
+	private long timeouts;
+	private List<String[]> samples;
+
+	public ReplacePreview(int limit) {
+		this.limit = limit;
+		samples = new ArrayList<>();
+	}
+
+	public boolean isFull() {
+		return samples.size() >= limit;
+	}
+
+	public void count() {
+		affected++;
+	}
+
+	public void add(String id, String before, String after) {
+		affected++;
+		samples.add(new String[] { id, before, after });
+	}
+
+	public void timedOut() {
+		timeouts++;
+	}
+
+	public long getAffected() {
+		return affected;
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("affected", affected);
+		json.put("timeouts", timeouts);
+		JSONArray array = new JSONArray();
+		Iterator<String[]> it = samples.iterator();
+		while (it.hasNext()) {
+			String[] sample = it.next();
+			JSONObject item = new JSONObject();
+			item.put("id", sample[0]);
+			item.put("before", sample[1]);
+			item.put("after", sample[2]);
+			array.put(item);
+		}
+		json.put("samples", array);
+		return json;
+	}
+}
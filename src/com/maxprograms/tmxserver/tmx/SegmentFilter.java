@@ -0,0 +1,295 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.maxprograms.tmxserver.utils.TextUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+
+public class SegmentFilter {
+
+	private static final Pattern COMMENTS = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+
+	private String filterText;
+	private String target;
+	private boolean caseSensitive;
+	private boolean ignoreAccents;
+	private boolean regExp;
+	private Pattern pattern;
+	private List<String> literals;
+
+	public SegmentFilter(String filterText, boolean caseSensitive, boolean ignoreAccents, boolean regExp) {
+		this.filterText = filterText;
+		this.caseSensitive = caseSensitive;
+		this.ignoreAccents = ignoreAccents && !regExp;
+		this.regExp = regExp;
+		if (regExp) {
+			pattern = Pattern.compile(filterText);
+			literals = requiredLiterals(filterText);
+		} else {
+			target = isFolded() ? FoldedText.fold(filterText, caseSensitive, ignoreAccents) : filterText;
+			literals = List.of(filterText);
+		}
+	}
+
+	public String getFilterText() {
+		return filterText;
+	}
+
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
+	public boolean isIgnoreAccents() {
+		return ignoreAccents;
+	}
+
+	public boolean isFolded() {
+		return !regExp && (!caseSensitive || ignoreAccents);
+	}
+
+	public boolean isRegExp() {
+		return regExp;
+	}
+
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	public boolean matches(Element seg) {
+		if (seg == null) {
+			return false;
+		}
+		List<XMLNode> content = seg.getContent();
+		Iterator<XMLNode> it = content.iterator();
+		while (it.hasNext()) {
+			XMLNode node = it.next();
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				if (matches(((TextNode) node).getText())) {
+					return true;
+				}
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				Element e = (Element) node;
+				String type = e.getName();
+				if ((type.equals("sub") || type.equals("hi")) && matches(e)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public boolean matches(String text) {
+		if (regExp) {
+			return TextUtils.find(pattern, text);
+		}
+		if (isFolded()) {
+			return matchesFolded(FoldedText.fold(text, caseSensitive, ignoreAccents));
+		}
+		return text.indexOf(target) != -1;
+	}
+
+	public boolean matchesFolded(String folded) {
+		return !target.isEmpty() && folded.indexOf(target) != -1;
+	}
+
+	protected static List<String> requiredLiterals(String regExp) {
+		List<String> result = new ArrayList<>();
+		if (regExp.indexOf("\\Q") != -1 || COMMENTS.matcher(regExp).find()) {
+			return result;
+		}
+		StringBuilder run = new StringBuilder();
+		int length = regExp.length();
+		int i = 0;
+		while (i < length) {
+			int c = regExp.codePointAt(i);
+			int literal = -1;
+			if (c == '\\') {
+				if (i + 1 >= length) {
+					break;
+				}
+				int d = regExp.codePointAt(i + 1);
+				i += 1 + Character.charCount(d);
+				if (Character.isLetterOrDigit(d)) {
+					i = skipEscape(regExp, i, d);
+				} else {
+					literal = d;
+				}
+			} else if (c == '[') {
+				i = skipClass(regExp, i);
+			} else if (c == '(') {
+				i = skipGroup(regExp, i);
+			} else if (c == '|' || c == ')') {
+				return new ArrayList<>();
+			} else if (c == '.' || c == '^' || c == '$' || c == '*' || c == '+' || c == '?' || c == '{') {
+				i++;
+			} else {
+				literal = c;
+				i += Character.charCount(c);
+			}
+			if (i <= 0) {
+				return new ArrayList<>();
+			}
+			int min = i < length ? minRepetitions(regExp, i) : 1;
+			if (literal != -1 && min != 0) {
+				run.appendCodePoint(literal);
+			}
+			if (literal == -1 || min != 1) {
+				flush(run, result);
+			}
+			i = skipQuantifier(regExp, i);
+		}
+		flush(run, result);
+		return result;
+	}
+
+	private static int skipEscape(String regExp, int i, int d) {
+		int length = regExp.length();
+		if (i >= length) {
+			return i;
+		}
+		char next = regExp.charAt(i);
+		switch (d) {
+			case 'p':
+			case 'P':
+			case 'N':
+				return next == '{' ? regExp.indexOf('}', i) + 1 : i + 1;
+			case 'x':
+				return next == '{' ? regExp.indexOf('}', i) + 1 : skipDigits(regExp, i, 2, 16);
+			case 'u':
+				return skipDigits(regExp, i, 4, 16);
+			case '0':
+				return skipDigits(regExp, i, next >= '0' && next <= '3' ? 3 : 2, 8);
+			case 'k':
+				return next == '<' ? regExp.indexOf('>', i) + 1 : i;
+			case 'c':
+				return i + 1;
+			default:
+				if (d >= '1' && d <= '9') {
+					return skipDigits(regExp, i, length, 10);
+				}
+				return i;
+		}
+	}
+
+	private static int skipDigits(String regExp, int i, int max, int radix) {
+		int j = i;
+		while (j < regExp.length() && j - i < max && Character.digit(regExp.charAt(j), radix) != -1) {
+			j++;
+		}
+		return j;
+	}
+
+	private static void flush(StringBuilder run, List<String> result) {
+		if (run.length() > 0) {
+			result.add(run.toString());
+			run.setLength(0);
+		}
+	}
+
+	private static boolean isQuantifier(String regExp, int i) {
+		if (i >= regExp.length()) {
+			return false;
+		}
+		char c = regExp.charAt(i);
+		return c == '*' || c == '+' || c == '?' || c == '{';
+	}
+
+	private static int minRepetitions(String regExp, int i) {
+		char c = regExp.charAt(i);
+		if (c == '*' || c == '?') {
+			return 0;
+		}
+		if (c == '+') {
+			return 2;
+		}
+		if (c == '{') {
+			int end = i + 1;
+			while (end < regExp.length() && Character.isDigit(regExp.charAt(end))) {
+				end++;
+			}
+			if (end == i + 1) {
+				return 0;
+			}
+			return Integer.parseInt(regExp.substring(i + 1, end)) == 0 ? 0 : 2;
+		}
+		return 1;
+	}
+
+	private static int skipQuantifier(String regExp, int i) {
+		if (!isQuantifier(regExp, i)) {
+			return i;
+		}
+		int j = i;
+		if (regExp.charAt(j) == '{') {
+			j = regExp.indexOf('}', j);
+		}
+		j++;
+		if (j < regExp.length() && (regExp.charAt(j) == '?' || regExp.charAt(j) == '+')) {
+			j++;
+		}
+		return j;
+	}
+
+	private static int skipClass(String regExp, int start) {
+		int i = start + 1;
+		if (i < regExp.length() && regExp.charAt(i) == '^') {
+			i++;
+		}
+		if (i < regExp.length() && regExp.charAt(i) == ']') {
+			i++;
+		}
+		int depth = 1;
+		while (i < regExp.length() && depth > 0) {
+			char c = regExp.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+			} else if (c == ']') {
+				depth--;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipGroup(String regExp, int start) {
+		int i = start + 1;
+		int depth = 1;
+		while (i < regExp.length() && depth > 0) {
+			char c = regExp.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == '[') {
+				i = skipClass(regExp, i);
+				continue;
+			}
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			}
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.maxprograms.xml.CData;
+import com.maxprograms.xml.Comment;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.PI;
+import com.maxprograms.xml.SAXBuilder;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+
+public class SegmentParser {
+
+	private String source;
+	private int pos;
+	private StringBuilder text;
+	private List<XMLNode> content;
+	private Deque<Element> stack;
+
+	private SegmentParser(String source) {
+		this.source = source;
+		text = new StringBuilder();
+		content = new ArrayList<>();
+		stack = new ArrayDeque<>();
+	}
+
+	public static List<XMLNode> parse(String source) throws IOException {
+		SegmentParser parser = new SegmentParser(source);
+		parser.parse();
+		return parser.content;
+	}
+
+	private void parse() throws IOException {
+		int length = source.length();
+		while (pos < length) {
+			char c = source.charAt(pos);
+			if (c == '<') {
+				flush();
+				if (source.startsWith("</", pos)) {
+					endElement();
+				} else if (source.startsWith("<!--", pos)) {
+					int end = find("-->", pos + 4);
+					add(comment(source.substring(pos + 4, end)));
+					pos = end + 3;
+				} else if (source.startsWith("<![CDATA[", pos)) {
+					int end = find("]]>", pos + 9);
+					add(new CData(source.substring(pos + 9, end)));
+					pos = end + 3;
+				} else if (source.startsWith("<?", pos)) {
+					int end = find("?>", pos + 2);
+					String data = source.substring(pos + 2, end);
+					int space = 0;
+					while (space < data.length() && !Character.isWhitespace(data.charAt(space))) {
+						space++;
+					}
+					add(new PI(data.substring(0, space), data.substring(space).strip()));
+					pos = end + 2;
+				} else {
+					startElement();
+				}
+			} else if (c == '&') {
+				text.append(entity());
+			} else if (c == '\r') {
+				text.append('\n');
+				pos++;
+				if (pos < length && source.charAt(pos) == '\n') {
+					pos++;
+				}
+			} else {
+				text.append(c);
+				pos++;
+			}
+		}
+		flush();
+		if (!stack.isEmpty()) {
+			throw new IOException("Unclosed element: " + stack.peek().getName());
+		}
+	}
+
+	private void startElement() throws IOException {
+		pos++;
+		Element element = new Element(name());
+		while (true) {
+			skipSpaces();
+			if (pos >= source.length()) {
+				throw new IOException("Unterminated element: " + element.getName());
+			}
+			char c = source.charAt(pos);
+			if (c == '>') {
+				pos++;
+				add(element);
+				stack.push(element);
+				return;
+			}
+			if (source.startsWith("/>", pos)) {
+				pos += 2;
+				add(element);
+				return;
+			}
+			String attribute = name();
+			skipSpaces();
+			if (pos >= source.length() || source.charAt(pos) != '=') {
+				throw new IOException("Missing value for attribute " + attribute);
+			}
+			pos++;
+			skipSpaces();
+			element.setAttribute(attribute, value());
+		}
+	}
+
+	private void endElement() throws IOException {
+		pos += 2;
+		String name = name();
+		skipSpaces();
+		if (pos >= source.length() || source.charAt(pos) != '>') {
+			throw new IOException("Malformed end tag: " + name);
+		}
+		pos++;
+		if (stack.isEmpty() || !stack.peek().getName().equals(name)) {
+			throw new IOException("Unexpected end tag: " + name);
+		}
+		stack.pop();
+	}
+
+	private String name() throws IOException {
+		int start = pos;
+		while (pos < source.length()) {
+			char c = source.charAt(pos);
+			if (Character.isWhitespace(c) || c == '/' || c == '>' || c == '=' || c == '<') {
+				break;
+			}
+			pos++;
+		}
+		if (start == pos) {
+			throw new IOException("Missing name at position " + start);
+		}
+		return source.substring(start, pos);
+	}
+
+	private String value() throws IOException {
+		if (pos >= source.length()) {
+			throw new IOException("Missing attribute value");
+		}
+		char quote = source.charAt(pos);
+		if (quote != '"' && quote != '\'') {
+			throw new IOException("Unquoted attribute value at position " + pos);
+		}
+		pos++;
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			if (pos >= source.length()) {
+				throw new IOException("Unterminated attribute value");
+			}
+			char c = source.charAt(pos);
+			if (c == quote) {
+				pos++;
+				return sb.toString();
+			}
+			if (c == '<') {
+				throw new IOException("Invalid character in attribute value");
+			}
+			if (c == '&') {
+				sb.append(entity());
+			} else {
+				sb.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+				pos++;
+			}
+		}
+	}
+
+	private String entity() throws IOException {
+		int end = source.indexOf(';', pos);
+		if (end == -1) {
+			throw new IOException("Unterminated entity at position " + pos);
+		}
+		String name = source.substring(pos + 1, end);
+		pos = end + 1;
+		switch (name) {
+			case "amp":
+				return "&";
+			case "lt":
+				return "<";
+			case "gt":
+				return ">";
+			case "quot":
+				return "\"";
+			case "apos":
+				return "'";
+			default:
+				if (name.startsWith("#")) {
+					try {
+						int code = name.startsWith("#x") ? Integer.parseInt(name.substring(2), 16)
+								: Integer.parseInt(name.substring(1));
+						return new String(Character.toChars(code));
+					} catch (IllegalArgumentException e) {
+						throw new IOException("Invalid character reference: " + name);
+					}
+				}
+				throw new IOException("Unknown entity: " + name);
+		}
+	}
+
+	private int find(String target, int from) throws IOException {
+		int index = source.indexOf(target, from);
+		if (index == -1) {
+			throw new IOException("Missing " + target);
+		}
+		return index;
+	}
+
+	private void skipSpaces() {
+		while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private void flush() {
+		if (text.length() > 0) {
+			add(new TextNode(text.toString()));
+			text.setLength(0);
+		}
+	}
+
+	private void add(XMLNode node) {
+		if (stack.isEmpty()) {
+			content.add(node);
+		} else {
+			stack.peek().addContent(node);
+		}
+	}
+
+	private static Comment comment(String text) throws IOException {
+		String xml = "<c><!--" + text + "--></c>";
+		try {
+			Element root = new SAXBuilder().build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+					.getRootElement();
+			return (Comment) root.getContent().get(0);
+		} catch (SAXException | ParserConfigurationException | ClassCastException | IndexOutOfBoundsException e) {
+			throw new IOException("Invalid comment: " + text);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.text.BreakIterator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+public class Statistics {
+
+	private static final ThreadLocal<Map<String, BreakIterator>> ITERATORS = ThreadLocal.withInitial(HashMap::new);
+
+	private Map<String, Counts> languages;
+	private volatile boolean discarded;
+
+	public Statistics() {
+		languages = new ConcurrentHashMap<>();
+	}
+
+	public void add(String lang, String text) {
+		if (!text.isBlank()) {
+			languages.computeIfAbsent(lang, k -> new Counts()).add(FingerprintSet.fingerprint(text),
+					countWords(lang, text), countCharacters(text));
+		}
+	}
+
+	public void remove(String lang, String text) {
+		Counts counts = languages.get(lang);
+		if (counts != null && !text.isBlank()) {
+			counts.remove(FingerprintSet.fingerprint(text), countWords(lang, text), countCharacters(text));
+		}
+	}
+
+	public void replace(String lang, String before, String after) {
+		if (!before.equals(after)) {
+			remove(lang, before);
+			add(lang, after);
+		}
+	}
+
+	public void changeLanguage(String oldLang, String newLang) {
+		Counts counts = languages.remove(oldLang);
+		if (counts != null) {
+			languages.put(newLang, counts);
+		}
+	}
+
+	public void removeLanguage(String lang) {
+		languages.remove(lang);
+	}
+
+	public void discard() {
+		discarded = true;
+	}
+
+	public boolean isDiscarded() {
+		return discarded;
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		Iterator<String> it = new TreeSet<>(languages.keySet()).iterator();
+		while (it.hasNext()) {
+			String lang = it.next();
+			json.put(lang, languages.get(lang).toJSON());
+		}
+		return json;
+	}
+
+	public static int countWords(String lang, String text) {
+		BreakIterator iterator = ITERATORS.get().computeIfAbsent(lang,
+				k -> BreakIterator.getWordInstance(Locale.forLanguageTag(k)));
+		iterator.setText(text);
+		int words = 0;
+		int start = iterator.first();
+		for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+			for (int i = start; i < end; i++) {
+				if (Character.isLetterOrDigit(text.charAt(i))) {
+					words++;
+					break;
+				}
+			}
+		}
+		return words;
+	}
+
+	public static int countCharacters(String text) {
+		int characters = 0;
+		int i = 0;
+		while (i < text.length()) {
+			int c = text.codePointAt(i);
+			if (!Character.isWhitespace(c) && c != '\u00A0') {
+				characters++;
+			}
+			i += Character.charCount(c);
+		}
+		return characters;
+	}
+
+	private static class Counts {
+
+		private long segments;
+		private long words;
+		private long characters;
+		private long repeatedSegments;
+		private long repeatedWords;
+		private long repeatedCharacters;
+		private Map<FingerprintSet.Fingerprint, Integer> occurrences = new HashMap<>();
+
+		synchronized void add(FingerprintSet.Fingerprint fingerprint, int segmentWords, int segmentCharacters) {
+			segments++;
+			words += segmentWords;
+			characters += segmentCharacters;
+			if (occurrences.merge(fingerprint, 1, Integer::sum) > 1) {
+				repeatedSegments++;
+				repeatedWords += segmentWords;
+				repeatedCharacters += segmentCharacters;
+			}
+		}
+
+		synchronized void remove(FingerprintSet.Fingerprint fingerprint, int segmentWords, int segmentCharacters) {
+			Integer count = occurrences.get(fingerprint);
+			if (count == null) {
+				return;
+			}
+			segments--;
+			words -= segmentWords;
+			characters -= segmentCharacters;
+			if (count > 1) {
+				occurrences.put(fingerprint, count - 1);
+				repeatedSegments--;
+				repeatedWords -= segmentWords;
+				repeatedCharacters -= segmentCharacters;
+			} else {
+				occurrences.remove(fingerprint);
+			}
+		}
+
+		synchronized JSONObject toJSON() {
+			JSONObject json = new JSONObject();
+			json.put("segments", segments);
+			json.put("words", words);
+			json.put("characters", characters);
+			json.put("uniqueSegments", occurrences.size());
+			json.put("repeatedSegments", repeatedSegments);
+			json.put("repeatedWords", repeatedWords);
+			json.put("repeatedCharacters", repeatedCharacters);
+			return json;
+		}
+	}
+}
@@ -36,8 +36,19 @@ public interface StoreInterface {
 	Set<String> getLanguages();
 
 	List<TUnit> getUnits(long start, int count, String filterText, Language filterLanguage, boolean caseSensitiveFilter,
-			boolean filterUntranslated, boolean regExp, Language filterSrcLanguage, Language sortLanguage,
-			boolean ascending) throws IOException;
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+			Language sortLanguage, boolean ascending) throws IOException;
+
+	long countUnits(String filterText, Language filterLanguage, boolean caseSensitiveFilter, boolean ignoreAccents,
+			boolean filterUntranslated, boolean regExp, Language filterSrcLanguage) throws IOException;
+
+	FilterJob submitQuery(String filterText, Language filterLanguage, boolean caseSensitiveFilter,
+			boolean ignoreAccents, boolean filterUntranslated, boolean regExp, Language filterSrcLanguage,
+			Language sortLanguage, boolean ascending) throws IOException;
+
+	void runQuery(FilterJob job) throws IOException;
+
+	List<TUnit> getUnits(FilterJob job, long start, int count) throws IOException;
 
 	void close() throws IOException;
 
@@ -61,6 +72,11 @@ public interface StoreInterface {
 	void replaceText(String search, String replace, Language language, boolean regExp)
 			throws  SAXException, IOException, ParserConfigurationException;
 
+	ReplacePreview previewReplace(String search, String replace, Language language, boolean regExp, int limit)
+			throws IOException;
+
+	void batchReplace(Glossary glossary) throws IOException;
+
 	long getProcessed();
 
 	void insertUnit(String id) throws  IOException;
@@ -80,10 +96,16 @@ public interface StoreInterface {
 
 	void removeDuplicates() throws  SAXException, IOException, ParserConfigurationException;
 
+	NearDuplicates findNearDuplicates(Language srcLang, double threshold) throws IOException;
+
+	Statistics getStatistics() throws IOException;
+
 	void removeSpaces() throws SAXException, IOException, ParserConfigurationException;
 
 	void consolidateUnits(Language lang) throws IOException,  SAXException, ParserConfigurationException;
 
+	void processTasks(MaintenanceTasks tasks) throws IOException, SAXException, ParserConfigurationException;
+
 	void setTuAttributes(String id, List<String[]> attributes)
 			throws SAXException, IOException, ParserConfigurationException;
 
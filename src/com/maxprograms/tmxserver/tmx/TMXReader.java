@@ -39,7 +39,6 @@ public class TMXReader {
 	}
 
 	public void parse(File file) throws SAXException, IOException, ParserConfigurationException {
-		TmxUtils.resetTags();
 		builder.build(file);
 		store.commit();
 	}
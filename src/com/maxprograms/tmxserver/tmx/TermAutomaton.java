@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+public class TermAutomaton {
+
+	private Map<Long, Integer> transitions;
+	private int[] fail;
+	private int[] lengths;
+	private int[] terms;
+	private int[] own;
+	private int[] links;
+
+	public TermAutomaton(List<String> list) {
+		transitions = new HashMap<>();
+		List<Integer> depths = new ArrayList<>();
+		List<Integer> outputs = new ArrayList<>();
+		List<StringBuilder> children = new ArrayList<>();
+		depths.add(0);
+		outputs.add(-1);
+		children.add(new StringBuilder());
+		for (int t = 0; t < list.size(); t++) {
+			String term = list.get(t);
+			int state = 0;
+			for (int i = 0; i < term.length(); i++) {
+				char c = term.charAt(i);
+				Integer next = transitions.get(key(state, c));
+				if (next == null) {
+					next = depths.size();
+					transitions.put(key(state, c), next);
+					depths.add(0);
+					outputs.add(-1);
+					children.add(new StringBuilder());
+					children.get(state).append(c);
+				}
+				state = next;
+			}
+			if (state != 0) {
+				depths.set(state, term.length());
+				outputs.set(state, t);
+			}
+		}
+		fail = new int[depths.size()];
+		lengths = new int[depths.size()];
+		terms = new int[depths.size()];
+		own = new int[depths.size()];
+		links = new int[depths.size()];
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = depths.get(i);
+			terms[i] = outputs.get(i);
+			own[i] = outputs.get(i);
+		}
+		Queue<Integer> queue = new ArrayDeque<>();
+		queue.add(0);
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			StringBuilder chars = children.get(state);
+			for (int i = 0; i < chars.length(); i++) {
+				char c = chars.charAt(i);
+				int child = transitions.get(key(state, c));
+				int f = fail[state];
+				while (f != 0 && !transitions.containsKey(key(f, c))) {
+					f = fail[f];
+				}
+				Integer target = transitions.get(key(f, c));
+				fail[child] = target != null && target != child ? target : 0;
+				links[child] = own[fail[child]] != -1 ? fail[child] : links[fail[child]];
+				if (lengths[fail[child]] > lengths[child]) {
+					lengths[child] = lengths[fail[child]];
+					terms[child] = terms[fail[child]];
+				}
+				queue.add(child);
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return lengths.length == 1;
+	}
+
+	public int next(int state, char c) {
+		int s = state;
+		Integer next = transitions.get(key(s, c));
+		while (next == null && s != 0) {
+			s = fail[s];
+			next = transitions.get(key(s, c));
+		}
+		return next == null ? 0 : next;
+	}
+
+	public int getLength(int state) {
+		return lengths[state];
+	}
+
+	public int getTerm(int state) {
+		return terms[state];
+	}
+
+	public int getMatch(int state) {
+		return own[state] != -1 ? state : links[state];
+	}
+
+	public int getNextMatch(int match) {
+		return links[match];
+	}
+
+	public int getMatchTerm(int match) {
+		return own[match];
+	}
+
+	private static long key(int state, char c) {
+		return ((long) state << 16) | c;
+	}
+}
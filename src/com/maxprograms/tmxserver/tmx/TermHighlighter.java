@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.maxprograms.tmxserver.utils.TextUtils;
+
+public class TermHighlighter {
+
+	private boolean caseSensitive;
+	private boolean ignoreAccents;
+	private TermAutomaton automaton;
+
+	public TermHighlighter(List<String> terms, boolean caseSensitive, boolean ignoreAccents) {
+		this.caseSensitive = caseSensitive;
+		this.ignoreAccents = ignoreAccents;
+		List<String> folded = new ArrayList<>();
+		Iterator<String> it = terms.iterator();
+		while (it.hasNext()) {
+			folded.add(isFolded() ? FoldedText.fold(it.next(), caseSensitive, ignoreAccents) : it.next());
+		}
+		automaton = new TermAutomaton(folded);
+	}
+
+	public boolean isEmpty() {
+		return automaton.isEmpty();
+	}
+
+	public boolean matches(String text) {
+		String target = isFolded() ? FoldedText.fold(text, caseSensitive, ignoreAccents) : text;
+		int state = 0;
+		for (int i = 0; i < target.length(); i++) {
+			state = automaton.next(state, target.charAt(i));
+			if (automaton.getLength(state) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public String highlight(String string) {
+		if (isEmpty()) {
+			return TextUtils.cleanString(string);
+		}
+		FoldedText folded = isFolded() ? new FoldedText(string, caseSensitive, ignoreAccents) : null;
+		String text = folded != null ? folded.getText() : string;
+		StringBuilder sb = new StringBuilder(string.length() + 32);
+		int last = 0;
+		int spanStart = -1;
+		int spanEnd = -1;
+		int state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			state = automaton.next(state, text.charAt(i));
+			if (automaton.getLength(state) > 0) {
+				int start = i + 1 - automaton.getLength(state);
+				if (spanStart != -1 && start <= spanEnd) {
+					spanEnd = i + 1;
+				} else {
+					last = append(sb, string, folded, last, spanStart, spanEnd);
+					spanStart = start;
+					spanEnd = i + 1;
+				}
+			}
+		}
+		last = append(sb, string, folded, last, spanStart, spanEnd);
+		sb.append(TextUtils.cleanString(string.substring(last)));
+		return sb.toString();
+	}
+
+	private static int append(StringBuilder sb, String string, FoldedText folded, int last, int spanStart,
+			int spanEnd) {
+		if (spanStart == -1) {
+			return last;
+		}
+		int start = Math.max(last, folded != null ? folded.getStart(spanStart) : spanStart);
+		int end = folded != null ? folded.getEnd(spanEnd) : spanEnd;
+		if (end <= start) {
+			return last;
+		}
+		sb.append(TextUtils.cleanString(string.substring(last, start)));
+		sb.append("<span ");
+		sb.append(TmxUtils.STYLE);
+		sb.append('>');
+		sb.append(TextUtils.cleanString(string.substring(start, end)));
+		sb.append("</span>");
+		return end;
+	}
+
+	private boolean isFolded() {
+		return !caseSensitive || ignoreAccents;
+	}
+}
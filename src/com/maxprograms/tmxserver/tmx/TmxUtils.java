@@ -12,16 +12,14 @@
 
 package com.maxprograms.tmxserver.tmx;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -29,14 +27,13 @@ import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
-
+import com.maxprograms.tmxserver.utils.PatternCache;
+import com.maxprograms.tmxserver.utils.RegexTimeoutException;
+import com.maxprograms.tmxserver.utils.TagGlyphs;
 import com.maxprograms.tmxserver.utils.TextUtils;
+import com.maxprograms.tmxserver.utils.TimedCharSequence;
 import com.maxprograms.xml.Attribute;
 import com.maxprograms.xml.Element;
-import com.maxprograms.xml.SAXBuilder;
 import com.maxprograms.xml.TextNode;
 import com.maxprograms.xml.XMLNode;
 
@@ -44,15 +41,8 @@ public class TmxUtils {
 
 	public static final String STYLE = "class='highlighted'";
 
-	private static int maxTag;
-	private static int tag;
-	private static HashMap<String, String> tags;
-
-	private static SAXBuilder builder;
-	private static Pattern pattern;
-	private static String lastFilterText;
-
 	private static File workDir;
+	private static volatile String glyphsURL;
 
 	private TmxUtils() {
 		// empty for security
@@ -82,135 +72,59 @@ public class TmxUtils {
 		return source;
 	}
 
-	public static String pureText(Element seg, boolean clearTags, String filterText, boolean caseSensitive,
+	public static void setGlyphsURL(String url) {
+		glyphsURL = url;
+	}
+
+	public static String pureText(Element seg, String filterText, boolean caseSensitive, boolean ignoreAccents,
 			boolean regExp) throws IOException {
-		if (seg == null) {
-			return "";
-		}
-		if (clearTags) {
-			if (tags != null) {
-				tags.clear();
-				tags = null;
-			}
-			tags = new HashMap<>();
-			tag = 1;
+		return render(seg).toHTML(filterText, caseSensitive, ignoreAccents, regExp);
+	}
+
+	public static RenderedSegment render(Element seg) throws IOException {
+		RenderedSegment rendered = new RenderedSegment();
+		if (seg != null) {
+			render(seg, rendered);
 		}
+		return rendered;
+	}
+
+	private static void render(Element seg, RenderedSegment rendered) throws IOException {
 		List<XMLNode> list = seg.getContent();
 		Iterator<XMLNode> it = list.iterator();
-		StringBuilder text = new StringBuilder();
 		while (it.hasNext()) {
 			XMLNode o = it.next();
 			if (o.getNodeType() == XMLNode.TEXT_NODE) {
-				if (filterText == null) {
-					text.append(TextUtils.cleanString(((TextNode) o).getText()));
-				} else {
-					if (regExp) {
-						if (pattern == null || !filterText.equals(lastFilterText)) {
-							pattern = Pattern.compile(filterText);
-							lastFilterText = filterText;
-						}
-						String s = ((TextNode) o).getText();
-						Matcher matcher = pattern.matcher(s);
-						if (matcher.find()) {
-							StringBuilder sb = new StringBuilder();
-							do {
-								int start = matcher.start();
-								int end = matcher.end();
-								sb.append(TextUtils.cleanString(s.substring(0, start)));
-								sb.append("<span " + STYLE + ">");
-								sb.append(TextUtils.cleanString(s.substring(start, end)));
-								sb.append("</span>");
-								s = s.substring(end);
-								matcher = pattern.matcher(s);
-							} while (matcher.find());
-							sb.append(TextUtils.cleanString(s));
-							text.append(sb.toString());
-						} else {
-							text.append(TextUtils.cleanString(s));
-						}
-					} else {
-						String s = TextUtils.cleanString(((TextNode) o).getText());
-						String t = TextUtils.cleanString(filterText);
-						if (caseSensitive) {
-							if (s.indexOf(t) != -1) {
-								text.append(highlight(s, t, caseSensitive));
-							} else {
-								text.append(s);
-							}
-						} else {
-							if (s.toLowerCase().indexOf(t.toLowerCase()) != -1) {
-								text.append(highlight(s, t, caseSensitive));
-							} else {
-								text.append(s);
-							}
-						}
-					}
-				}
+				rendered.addText(((TextNode) o).getText());
 			} else if (o.getNodeType() == XMLNode.ELEMENT_NODE) {
 				Element e = (Element) o;
 				String type = e.getName();
 				if (type.equals("sub") || type.equals("hi")) {
-					checkSVG();
-					String header = getHeader(e);
-					tags.put("[[" + tag + "]]", header);
-					text.append("<img src='");
-					text.append(getWorkFolder().toURI().toURL().toString());
-					text.append("images/");
-					text.append(tag++);
-					text.append(".svg' align='bottom' alt='' title=\"");
-					text.append(unquote(cleanAngles(header)));
-					text.append("\"/>");
-					text.append(pureText(e, false, filterText, caseSensitive, regExp));
-					checkSVG();
-					String tail = getTail(e);
-					tags.put("[[" + tag + "]]", tail);
-					text.append("<img src='");
-					text.append(getWorkFolder().toURI().toURL().toString());
-					text.append("images/");
-					text.append(tag++);
-					text.append(".svg' align='bottom' alt='' title=\"");
-					text.append(unquote(cleanAngles(tail)));
-					text.append("\"/>");
+					addTag(rendered, getHeader(e));
+					render(e, rendered);
+					addTag(rendered, getTail(e));
 				} else {
-					checkSVG();
-					String element = e.toString();
-					tags.put("[[" + tag + "]]", element);
-					text.append("<img src='");
-					text.append(getWorkFolder().toURI().toURL().toString());
-					text.append("images/");
-					text.append(tag++);
-					text.append(".svg' align='bottom' alt='' title=\"");
-					text.append(unquote(cleanAngles(element)));
-					text.append("\"/>");
+					addTag(rendered, e.toString());
 				}
 			}
 		}
-		return text.toString();
 	}
 
-	protected static String highlight(String string, String target, boolean caseSensitive) {
-		String result = string;
-		int start = -1;
-		String replacement = "<span " + STYLE + ">" + target + "</span>";
-		if (caseSensitive) {
-			start = result.indexOf(target);
+	private static void addTag(RenderedSegment rendered, String code) throws IOException {
+		int tag = rendered.getTagCount() + 1;
+		StringBuilder text = new StringBuilder();
+		text.append("<img src='");
+		if (glyphsURL != null && tag <= TagGlyphs.MAX_TAG) {
+			text.append(glyphsURL);
+			text.append(tag);
+			text.append(".svg");
 		} else {
-			start = result.toLowerCase().indexOf(target.toLowerCase());
-			replacement = "<span " + STYLE + ">" + result.substring(start, start + target.length()) + "</span>";
-		}
-		while (start != -1) {
-			result = result.substring(0, start) + replacement + result.substring(start + target.length());
-			start = start + replacement.length();
-			if (caseSensitive) {
-				start = result.indexOf(target, start);
-			} else {
-				start = result.toLowerCase().indexOf(target.toLowerCase(), start);
-				if (start != -1) {
-					replacement = "<span " + STYLE + ">" + result.substring(start, start + target.length()) + "</span>";
-				}
-			}
+			text.append(TagGlyphs.getDataURI(tag));
 		}
-		return result;
+		text.append("' align='bottom' alt='' title=\"");
+		text.append(unquote(cleanAngles(code)));
+		text.append("\"/>");
+		rendered.addTag(code, text.toString());
 	}
 
 	public static String tmxDate() {
@@ -224,37 +138,6 @@ public class TmxUtils {
 		return longyear + mon + mday + "T" + hour + min + sec + "Z";
 	}
 
-	private static void checkSVG() throws IOException {
-		if (tag <= maxTag) {
-			return;
-		}
-		File folder = new File(getWorkFolder(), "images");
-		if (!folder.exists()) {
-			Files.createDirectories(folder.toPath());
-		}
-		File f = new File(folder, tag + ".svg");
-		if (!f.exists()) {
-			int width = 16;
-			if (tag >= 10) {
-				width = 22;
-			}
-			if (tag >= 100) {
-				width = 28;
-			}
-			String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
-					+ "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + (width + 1)
-					+ "px\" height=\"17px\" version=\"1.1\">\n" + "   <g>\n"
-					+ "      <rect style=\"fill:#009688\" width=\"" + width
-					+ "px\" height=\"16px\" x=\"1\" y=\"1\" rx=\"3\" ry=\"3\" />\n"
-					+ "      <text style=\"font-size:12px;font-style:normal;font-weight:normal;text-align:center;font-family:Sans;\"  x=\"6\" y=\"14\" fill=\"#ffffff\" fill-opacity=\"1\">\n"
-					+ "         <tspan>" + tag + "</tspan>\n" + "      </text>\n" + "   </g>\n" + "</svg>";
-			try (FileOutputStream out = new FileOutputStream(f)) {
-				out.write(svg.getBytes(StandardCharsets.UTF_8));
-			}
-			maxTag = tag;
-		}
-	}
-
 	private static String unquote(String string) {
 		return string.replaceAll("\"", "\u200B\u2033");
 	}
@@ -295,14 +178,6 @@ public class TmxUtils {
 		return result.toString();
 	}
 
-	public static void resetTags() {
-		maxTag = 0;
-	}
-
-	public static Map<String, String> getTags() {
-		return tags;
-	}
-
 	public static String textOnly(Element seg) {
 		List<XMLNode> list = seg.getContent();
 		Iterator<XMLNode> it = list.iterator();
@@ -322,7 +197,7 @@ public class TmxUtils {
 		return text.toString();
 	}
 
-	public static File getWorkFolder() throws IOException {
+	public static synchronized File getWorkFolder() throws IOException {
 		if (workDir != null) {
 			return workDir;
 		}
@@ -350,71 +225,104 @@ public class TmxUtils {
 		Files.delete(Paths.get(file.toURI()));
 	}
 
-	public static void replaceText(Element element, String search, String replace, boolean regExp) {
-		List<XMLNode> newContent = new ArrayList<>();
+	public static boolean replaceText(Element element, String search, String replace, boolean regExp) {
+		Map<TextNode, String> replacements = new IdentityHashMap<>();
+		collectReplacements(element, search, replace, regExp, replacements);
+		Iterator<Map.Entry<TextNode, String>> it = replacements.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<TextNode, String> entry = it.next();
+			entry.getKey().setText(entry.getValue());
+		}
+		return !replacements.isEmpty();
+	}
+
+	private static void collectReplacements(Element element, String search, String replace, boolean regExp,
+			Map<TextNode, String> replacements) {
 		List<XMLNode> content = element.getContent();
 		Iterator<XMLNode> it = content.iterator();
 		while (it.hasNext()) {
 			XMLNode node = it.next();
 			if (node.getNodeType() == XMLNode.TEXT_NODE) {
 				TextNode text = (TextNode) node;
-				text.setText(TextUtils.replaceAll(text.getText(), search, replace, regExp));
-				newContent.add(text);
+				String replaced = TextUtils.replaceAll(text.getText(), search, replace, regExp);
+				if (!replaced.equals(text.getText())) {
+					replacements.put(text, replaced);
+				}
 			}
 			if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
 				Element e = (Element) node;
 				String type = e.getName();
 				if (type.equals("sub") || type.equals("hi")) {
-					replaceText((Element) node, search, replace, regExp);
+					collectReplacements(e, search, replace, regExp, replacements);
 				}
-				newContent.add(node);
 			}
 		}
-		element.setContent(newContent);
 	}
 
-	public static Element stripSegment(Element seg) throws SAXException, IOException, ParserConfigurationException {
-		String text = textContent(seg);
-		char[] array = text.toCharArray();
-		for (int i = 0; i < array.length; i++) {
-			char c = array[i];
-			if (c == '\u00A0' || Character.isWhitespace(c)) {
-				array[i] = ' ';
+	public static boolean stripSegment(Element seg) {
+		List<XMLNode> content = new ArrayList<>(seg.getContent());
+		boolean leading = trim(content, true);
+		boolean trailing = trim(content, false);
+		if (leading || trailing) {
+			seg.setContent(content);
+		}
+		return leading || trailing;
+	}
+
+	private static boolean trim(List<XMLNode> content, boolean leading) {
+		boolean changed = false;
+		while (!content.isEmpty()) {
+			int index = leading ? 0 : content.size() - 1;
+			XMLNode node = content.get(index);
+			if (node.getNodeType() != XMLNode.TEXT_NODE) {
+				break;
+			}
+			String text = ((TextNode) node).getText();
+			int start = 0;
+			int end = text.length();
+			if (leading) {
+				while (start < end && isSpace(text.charAt(start))) {
+					start++;
+				}
 			} else {
+				while (end > start && isSpace(text.charAt(end - 1))) {
+					end--;
+				}
+			}
+			if (end - start == text.length()) {
 				break;
 			}
-		}
-		for (int i = array.length - 1; i >= 0; i--) {
-			char c = array[i];
-			if (c == '\u00A0' || Character.isWhitespace(c)) {
-				array[i] = ' ';
+			changed = true;
+			if (start == end) {
+				content.remove(index);
 			} else {
+				content.set(index, new TextNode(text.substring(start, end)));
 				break;
 			}
 		}
-		text = "<seg>" + new String(array).strip() + "</seg>";
-		if (builder == null) {
-			builder = new SAXBuilder();
-		}
-		return builder.build(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))).getRootElement();
+		return changed;
 	}
 
-	private static String textContent(Element element) {
-		StringBuilder sb = new StringBuilder();
-		List<XMLNode> content = element.getContent();
+	private static boolean isSpace(char c) {
+		return c == '\u00A0' || Character.isWhitespace(c);
+	}
+
+	public static boolean isBlank(Element seg) {
+		if (seg == null) {
+			return true;
+		}
+		List<XMLNode> content = seg.getContent();
 		Iterator<XMLNode> it = content.iterator();
 		while (it.hasNext()) {
 			XMLNode node = it.next();
-			if (node.getNodeType() == XMLNode.TEXT_NODE) {
-				TextNode t = (TextNode) node;
-				sb.append(TextUtils.cleanString(t.getText()));
+			if (node.getNodeType() == XMLNode.TEXT_NODE && !((TextNode) node).getText().isBlank()) {
+				return false;
 			}
 			if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
-				Element e = (Element) node;
-				sb.append(e.toString());
+				return false;
 			}
 		}
-		return sb.toString();
+		return true;
 	}
 
 	public static String cleanLines(String string) {
@@ -423,28 +331,35 @@ public class TmxUtils {
 	}
 
 	public static String highlightExpression(String string, String expression) {
-		String result = string;
-		if (pattern == null || !expression.equals(lastFilterText)) {
-			pattern = Pattern.compile(expression);
-			lastFilterText = expression;
-		}
-		Matcher matcher = pattern.matcher(result);
-		if (matcher.find()) {
-			StringBuilder sb = new StringBuilder();
-			do {
+		return highlight(PatternCache.get(expression), string, false);
+	}
+
+	protected static String highlight(Pattern regex, String string, boolean clean) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			Matcher matcher = regex
+					.matcher(new TimedCharSequence(string, TimedCharSequence.deadline(TextUtils.getSegmentTimeout())));
+			int last = 0;
+			while (matcher.find()) {
 				int start = matcher.start();
 				int end = matcher.end();
-				sb.append(result.substring(0, start));
+				if (start == end) {
+					continue;
+				}
+				String before = string.substring(last, start);
+				String match = string.substring(start, end);
+				sb.append(clean ? TextUtils.cleanString(before) : before);
 				sb.append("<span " + STYLE + ">");
-				sb.append(result.substring(start, end));
+				sb.append(clean ? TextUtils.cleanString(match) : match);
 				sb.append("</span>");
-				result = result.substring(end);
-				matcher = pattern.matcher(result);
-			} while (matcher.find());
-			sb.append(result);
-			return sb.toString();
+				last = end;
+			}
+			String tail = string.substring(last);
+			sb.append(clean ? TextUtils.cleanString(tail) : tail);
+		} catch (RegexTimeoutException e) {
+			return clean ? TextUtils.cleanString(string) : string;
 		}
-		return result;
+		return sb.toString();
 	}
 
 }
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+
+public class TrigramIndex {
+
+	private Map<String, Map<Long, Set<String>>> indexes;
+	private Set<String> building;
+	private Map<String, Long> generations;
+
+	public TrigramIndex() {
+		indexes = new HashMap<>();
+		building = new HashSet<>();
+		generations = new HashMap<>();
+	}
+
+	public synchronized Set<String> getCandidates(String lang, Map<String, Element> tuvs, List<String> literals) {
+		Set<Long> trigrams = new HashSet<>();
+		Iterator<String> it = literals.iterator();
+		while (it.hasNext()) {
+			addTrigrams(FoldedText.fold(it.next(), false, true), trigrams);
+		}
+		if (trigrams.isEmpty()) {
+			return null;
+		}
+		Map<Long, Set<String>> index = indexes.get(lang);
+		if (index == null) {
+			prepare(lang, tuvs);
+			return null;
+		}
+		List<Set<String>> postings = new ArrayList<>();
+		Iterator<Long> tt = trigrams.iterator();
+		while (tt.hasNext()) {
+			Set<String> set = index.get(tt.next());
+			if (set == null) {
+				return new HashSet<>();
+			}
+			postings.add(set);
+		}
+		Collections.sort(postings, new Comparator<Set<String>>() {
+
+			@Override
+			public int compare(Set<String> o1, Set<String> o2) {
+				return Integer.compare(o1.size(), o2.size());
+			}
+		});
+		Set<String> result = new HashSet<>(postings.get(0));
+		for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+			result.retainAll(postings.get(i));
+		}
+		return result;
+	}
+
+	private void prepare(String lang, Map<String, Element> tuvs) {
+		if (building.contains(lang)) {
+			return;
+		}
+		building.add(lang);
+		long started = getGeneration(lang);
+		Thread thread = new Thread() {
+
+			@Override
+			public void run() {
+				Map<Long, Set<String>> index = null;
+				try {
+					index = buildIndex(tuvs);
+				} catch (RuntimeException e) {
+					// the map changed while indexing; try again on the next query
+				}
+				synchronized (TrigramIndex.this) {
+					building.remove(lang);
+					if (index != null && started == getGeneration(lang)) {
+						indexes.put(lang, index);
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void update(String lang, String id, Element tuv) {
+		Map<Long, Set<String>> index = indexes.get(lang);
+		if (index != null && tuv != null) {
+			addSegment(index, id, tuv.getChild("seg"));
+		}
+		if (building.contains(lang)) {
+			nextGeneration(lang);
+		}
+	}
+
+	public synchronized void invalidate(String lang) {
+		indexes.remove(lang);
+		nextGeneration(lang);
+	}
+
+	public synchronized void invalidate() {
+		indexes.clear();
+		Iterator<String> it = building.iterator();
+		while (it.hasNext()) {
+			nextGeneration(it.next());
+		}
+	}
+
+	private long getGeneration(String lang) {
+		return generations.getOrDefault(lang, 0l);
+	}
+
+	private void nextGeneration(String lang) {
+		generations.put(lang, getGeneration(lang) + 1);
+	}
+
+	private static Map<Long, Set<String>> buildIndex(Map<String, Element> tuvs) {
+		Map<Long, Set<String>> index = new HashMap<>();
+		Iterator<Entry<String, Element>> it = tuvs.entrySet().iterator();
+		while (it.hasNext()) {
+			Entry<String, Element> entry = it.next();
+			addSegment(index, entry.getKey(), entry.getValue().getChild("seg"));
+		}
+		return index;
+	}
+
+	private static void addSegment(Map<Long, Set<String>> index, String id, Element seg) {
+		if (seg == null) {
+			return;
+		}
+		Set<Long> trigrams = new HashSet<>();
+		collectTrigrams(seg, trigrams);
+		Iterator<Long> it = trigrams.iterator();
+		while (it.hasNext()) {
+			Long trigram = it.next();
+			Set<String> set = index.get(trigram);
+			if (set == null) {
+				set = new HashSet<>();
+				index.put(trigram, set);
+			}
+			set.add(id);
+		}
+	}
+
+	private static void collectTrigrams(Element e, Set<Long> trigrams) {
+		List<XMLNode> content = e.getContent();
+		Iterator<XMLNode> it = content.iterator();
+		while (it.hasNext()) {
+			XMLNode node = it.next();
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				addTrigrams(FoldedText.fold(((TextNode) node).getText(), false, true), trigrams);
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				Element child = (Element) node;
+				if (child.getName().equals("sub") || child.getName().equals("hi")) {
+					collectTrigrams(child, trigrams);
+				}
+			}
+		}
+	}
+
+	private static void addTrigrams(String text, Set<Long> trigrams) {
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class PatternCache {
+
+	private static final int SIZE = 32;
+
+	private static Map<String, Pattern> patterns = new LinkedHashMap<>(SIZE, 0.75f, true) {
+
+		private static final long serialVersionUID = 7730962853447602951L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > SIZE;
+		}
+	};
+
+	private PatternCache() {
+		// empty for security
+	}
+
+	public static synchronized Pattern get(String regExp) {
+		Pattern pattern = patterns.get(regExp);
+		if (pattern == null) {
+			pattern = Pattern.compile(regExp);
+			patterns.put(regExp, pattern);
+		}
+		return pattern;
+	}
+}
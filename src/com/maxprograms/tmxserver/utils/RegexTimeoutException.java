@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.utils;
+
+public class RegexTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = -4419284006451736093L;
+
+	public RegexTimeoutException() {
+		super("Regular expression exceeded its time budget");
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TagGlyphs {
+
+	public static final int MAX_TAG = 999;
+
+	private static Map<Integer, byte[]> glyphs = new ConcurrentHashMap<>();
+	private static Map<Integer, String> uris = new ConcurrentHashMap<>();
+
+	private TagGlyphs() {
+		// empty for security
+	}
+
+	public static byte[] getSVG(int tag) {
+		if (tag > MAX_TAG) {
+			return createSVG(tag);
+		}
+		return glyphs.computeIfAbsent(tag, TagGlyphs::createSVG);
+	}
+
+	public static String getDataURI(int tag) {
+		if (tag > MAX_TAG) {
+			return createDataURI(tag);
+		}
+		return uris.computeIfAbsent(tag, TagGlyphs::createDataURI);
+	}
+
+	private static String createDataURI(int tag) {
+		return "data:image/svg+xml;base64," + Base64.getEncoder().encodeToString(getSVG(tag));
+	}
+
+	private static byte[] createSVG(int tag) {
+		int width = 16;
+		if (tag >= 10) {
+			width = 22;
+		}
+		if (tag >= 100) {
+			width = 28;
+		}
+		String svg = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + (width + 1)
+				+ "px\" height=\"17px\" version=\"1.1\">\n" + "   <g>\n"
+				+ "      <rect style=\"fill:#009688\" width=\"" + width
+				+ "px\" height=\"16px\" x=\"1\" y=\"1\" rx=\"3\" ry=\"3\" />\n"
+				+ "      <text style=\"font-size:12px;font-style:normal;font-weight:normal;text-align:center;font-family:Sans;\"  x=\"6\" y=\"14\" fill=\"#ffffff\" fill-opacity=\"1\">\n"
+				+ "         <tspan>" + tag + "</tspan>\n" + "      </text>\n" + "   </g>\n" + "</svg>";
+		return svg.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -19,13 +19,33 @@ import java.util.regex.Pattern;
 
 public class TextUtils {
 
-	private static Pattern pattern;
-	private static String lastTarget;
+	private static long segmentTimeout = 1000;
+	private static long queryTimeout = 60000;
 
 	private TextUtils() {
 		// empty for security
 	}
 
+	public static long getSegmentTimeout() {
+		return segmentTimeout;
+	}
+
+	public static void setSegmentTimeout(long millis) {
+		segmentTimeout = millis;
+	}
+
+	public static long getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public static void setQueryTimeout(long millis) {
+		queryTimeout = millis;
+	}
+
+	public static boolean find(Pattern pattern, String text) {
+		return pattern.matcher(new TimedCharSequence(text, TimedCharSequence.deadline(segmentTimeout))).find();
+	}
+
 	public static String cleanString(String string) {
 		if (string == null) {
 			return "";
@@ -40,11 +60,8 @@ public class TextUtils {
 	public static String replaceAll(String string, String target, String replacement, boolean regExp) {
 		String source = string;
 		if (regExp) {
-			if (pattern == null || !target.equals(lastTarget)) {
-				pattern = Pattern.compile(target);
-				lastTarget = target;
-			}
-			Matcher matcher = pattern.matcher(string);
+			Matcher matcher = PatternCache.get(target)
+					.matcher(new TimedCharSequence(string, TimedCharSequence.deadline(segmentTimeout)));
 			StringBuffer sb = new StringBuffer();
 			while (matcher.find()) {
 				matcher.appendReplacement(sb, replacement);
@@ -53,12 +70,19 @@ public class TextUtils {
 			return sb.toString();
 		}
 		int start = source.indexOf(target);
+		if (start == -1 || target.isEmpty()) {
+			return source;
+		}
+		StringBuilder sb = new StringBuilder(source.length());
+		int last = 0;
 		while (start != -1) {
-			source = source.substring(0, start) + replacement + source.substring(start + target.length());
-			start += replacement.length();
-			start = source.indexOf(target, start);
+			sb.append(source, last, start);
+			sb.append(replacement);
+			last = start + target.length();
+			start = source.indexOf(target, last);
 		}
-		return source;
+		sb.append(source, last, source.length());
+		return sb.toString();
 	}
 
 	public static String[] split(String string, String separator) {
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.utils;
+
+public class TimedCharSequence implements CharSequence {
+
+	private static final int CHECK_INTERVAL = 1024;
+
+	private String text;
+	private long deadline;
+	private int calls;
+
+	public TimedCharSequence(String text, long deadline) {
+		this.text = text;
+		this.deadline = deadline;
+	}
+
+	public static long deadline(long millis) {
+		return System.nanoTime() + millis * 1000000l;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (++calls == CHECK_INTERVAL) {
+			calls = 0;
+			if (System.nanoTime() - deadline > 0) {
+				throw new RegexTimeoutException();
+			}
+		}
+		return text.charAt(index);
+	}
+
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new TimedCharSequence(text.substring(start, end), deadline);
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class ReplaceTest {
+
+	private static int failures;
+
+	private ReplaceTest() {
+		// run from main
+	}
+
+	public static void main(String[] args) throws SAXException, IOException, ParserConfigurationException {
+		Element seg = parse("<seg>foo<ph>x</ph>foo<hi>foo</hi></seg>");
+		TmxUtils.replaceText(seg, "foo", "bar", false);
+		check("replaceText", "<seg>bar<ph>x</ph>bar<hi>bar</hi></seg>", seg.toString());
+
+		seg = parse("<seg>a foo<ph>x</ph>a foo</seg>");
+		TmxUtils.replaceText(seg, "(\\w) foo", "$1 bar", true);
+		check("replaceText regexp", "<seg>a bar<ph>x</ph>a bar</seg>", seg.toString());
+
+		Glossary glossary = new Glossary();
+		glossary.addRule("foo", "bar", "en");
+		glossary.addRule("baz", "qux", "en");
+		seg = parse("<seg>foo baz<ph>x</ph>foo baz<hi>foo</hi></seg>");
+		glossary.replace("en", seg);
+		check("batchReplace", "<seg>bar qux<ph>x</ph>bar qux<hi>bar</hi></seg>", seg.toString());
+		check("batchReplace count", "3 2", glossary.getCount(0) + " " + glossary.getCount(1));
+
+		if (failures > 0) {
+			throw new AssertionError(failures + " replacement checks failed");
+		}
+		System.out.println("ReplaceTest: OK");
+	}
+
+	private static Element parse(String xml) throws SAXException, IOException, ParserConfigurationException {
+		return new SAXBuilder().build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+				.getRootElement();
+	}
+
+	private static void check(String name, String expected, String actual) {
+		if (!expected.equals(actual)) {
+			failures++;
+			System.out.println("FAIL " + name + " expected=" + expected + " actual=" + actual);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2023 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.tmxserver.tmx;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.maxprograms.xml.Element;
+
+public class SegmentFilterTest {
+
+	private static final String[] SEGMENTS = { "ABC", "xABCx", "41BC", "\u00A0foo", "00A0foo", "Abc", "Abcd",
+			"101bc", "A7", "a\u0007b", "foo bar", "\u00E9t\u00E9 chaud", "tab\there", "AA", "A1BC" };
+
+	private static final String[] PATTERNS = { "\\x41BC", "\\x{41}BC", "\\u00A0foo", "\\0101bc", "\\0477",
+			"\\cGb", "\\pLbc", "\\p{Lu}bc", "\\N{LATIN CAPITAL LETTER A}bc", "(A)\\1", "(A)\\11BC", "\\tbar",
+			"\\u0009here", "\\x20bar", "foo\\sbar", "ABC", "\\QABC\\E", "\\bAbc\\b", "\\u00E9t\\u00E9" };
+
+	private SegmentFilterTest() {
+		// run from main
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, Element> tuvs = new TreeMap<>();
+		for (int i = 0; i < SEGMENTS.length; i++) {
+			Element seg = new Element("seg");
+			seg.setText(SEGMENTS[i]);
+			Element tuv = new Element("tuv");
+			tuv.addContent(seg);
+			tuvs.put("id" + i, tuv);
+		}
+		TrigramIndex index = new TrigramIndex();
+		List<String> probe = List.of("ABC");
+		long deadline = System.currentTimeMillis() + 10000;
+		while (index.getCandidates("en", tuvs, probe) == null) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("Trigram index was not built");
+			}
+			Thread.sleep(10);
+		}
+		int failures = 0;
+		for (int i = 0; i < PATTERNS.length; i++) {
+			SegmentFilter filter = new SegmentFilter(PATTERNS[i], true, false, true);
+			Set<String> candidates = index.getCandidates("en", tuvs, filter.getLiterals());
+			Set<String> scanned = new TreeSet<>();
+			Set<String> indexed = new TreeSet<>();
+			for (Map.Entry<String, Element> entry : tuvs.entrySet()) {
+				boolean matches = filter.matches(entry.getValue().getChild("seg"));
+				if (matches) {
+					scanned.add(entry.getKey());
+					if (candidates == null || candidates.contains(entry.getKey())) {
+						indexed.add(entry.getKey());
+					}
+				}
+			}
+			if (!scanned.equals(indexed)) {
+				failures++;
+				System.out.println("FAIL " + PATTERNS[i] + " literals=" + filter.getLiterals() + " scan="
+						+ scanned + " index=" + indexed);
+			}
+		}
+		failures += checkFolded("cafe", false, false, "caf\u00E9", false);
+		failures += checkFolded("e", false, false, "\u00E9t\u00E9", false);
+		failures += checkFolded("CAF\u00C9", false, false, "un caf\u00E9", true);
+		failures += checkFolded("cafe", false, true, "CAF\u00C9", true);
+		failures += checkFolded("cafe", true, true, "Caf\u00E9", false);
+		if (failures > 0) {
+			throw new AssertionError(failures + " checks failed");
+		}
+		System.out.println("SegmentFilterTest: " + PATTERNS.length + " patterns OK");
+	}
+
+	private static int checkFolded(String filterText, boolean caseSensitive, boolean ignoreAccents, String text,
+			boolean expected) {
+		SegmentFilter filter = new SegmentFilter(filterText, caseSensitive, ignoreAccents, false);
+		if (filter.matches(text) != expected) {
+			System.out.println("FAIL \"" + filterText + "\" caseSensitive=" + caseSensitive + " ignoreAccents="
+					+ ignoreAccents + " text=\"" + text + "\" expected " + expected);
+			return 1;
+		}
+		return 0;
+	}
+}
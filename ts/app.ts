@@ -96,6 +96,8 @@ class App {
         count: 200
     };
     static sortOptions: any = {};
+    static queryJob: string = '';
+    static queryUnits: number = 0;
     static csvLangArgs: any;
     static excelLangArgs: any;
     static attributesArg: any;
@@ -1368,20 +1370,29 @@ class App {
             return;
         }
         var json: any = {
-            command: 'getSegments'
+            command: 'submitQuery'
         }
         Object.assign(json, App.loadOptions);
         Object.assign(json, App.filterOptions);
         Object.assign(json, App.sortOptions);
+        App.cancelQuery();
         App.mainWindow.webContents.send('start-waiting');
         App.mainWindow.webContents.send('set-status', 'Loading segments...');
         App.sendRequest(json,
             (data: any) => {
-                App.mainWindow.webContents.send('set-status', '');
                 App.mainWindow.webContents.send('end-waiting');
                 if (data.status === SUCCESS) {
+                    App.queryJob = data.job;
+                    App.queryUnits = data.units.length;
                     App.mainWindow.webContents.send('update-segments', data);
+                    if (data.done) {
+                        App.mainWindow.webContents.send('set-status', '');
+                        App.queryCount(data);
+                    } else {
+                        App.waitForQuery(data.job);
+                    }
                 } else {
+                    App.mainWindow.webContents.send('set-status', '');
                     App.showMessage({ type: 'error', message: data.reason });
                 }
             },
@@ -1392,6 +1403,65 @@ class App {
         );
     }
 
+    static waitForQuery(job: string): void {
+        setTimeout(() => {
+            if (job !== App.queryJob) {
+                return;
+            }
+            var json: any = {
+                command: 'getQueryPage',
+                job: job
+            }
+            Object.assign(json, App.loadOptions);
+            App.sendRequest(json,
+                (data: any) => {
+                    if (job !== App.queryJob) {
+                        return;
+                    }
+                    if (data.status !== SUCCESS) {
+                        App.mainWindow.webContents.send('set-status', '');
+                        App.showMessage({ type: 'error', message: data.reason });
+                        return;
+                    }
+                    if (data.units.length !== App.queryUnits) {
+                        App.queryUnits = data.units.length;
+                        App.mainWindow.webContents.send('update-segments', data);
+                    }
+                    if (data.done) {
+                        App.mainWindow.webContents.send('set-status', '');
+                        App.queryCount(data);
+                    } else {
+                        App.mainWindow.webContents.send('set-status', 'Searching... ' + data.hits + ' found');
+                        App.waitForQuery(job);
+                    }
+                },
+                (reason: string) => {
+                    App.mainWindow.webContents.send('set-status', '');
+                    App.showMessage({ type: 'error', message: reason });
+                }
+            );
+        }, 500);
+    }
+
+    static queryCount(data: any): void {
+        App.mainWindow.webContents.send('status-changed', { status: SUCCESS, count: data.hits });
+    }
+
+    static cancelQuery(): void {
+        if (App.queryJob === '') {
+            return;
+        }
+        App.sendRequest({ command: 'cancelQuery', job: App.queryJob },
+            () => {
+                // query cancelled
+            },
+            (reason: string) => {
+                console.log(reason);
+            }
+        );
+        App.queryJob = '';
+    }
+
     static loadDefaults(): void {
         App.currentDefaults = { width: 950, height: 700, x: 0, y: 0 };
         if (existsSync(App.path.join(app.getPath('appData'), app.name, 'defaults.json'))) {
@@ -3322,7 +3392,12 @@ class App {
     }
 
     static getCount(): void {
-        App.sendRequest({ command: 'getCount' },
+        let json: any = { command: 'getCount' };
+        if (Object.keys(App.filterOptions).length > 0) {
+            json = { command: 'getFilteredCount' };
+            Object.assign(json, App.filterOptions);
+        }
+        App.sendRequest(json,
             (data: any) => {
                 App.mainWindow.webContents.send('status-changed', data);
             },
@@ -88,6 +88,9 @@ class Filters {
         if (arg.caseSensitiveFilter !== undefined) {
             (document.getElementById('caseSensitiveFilter') as HTMLInputElement).checked = arg.caseSensitiveFilter;
         }
+        if (arg.ignoreAccents !== undefined) {
+            (document.getElementById('ignoreAccents') as HTMLInputElement).checked = arg.ignoreAccents;
+        }
         if (arg.filterUntranslated !== undefined) {
             (document.getElementById('filterUntranslated') as HTMLInputElement).checked = arg.filterUntranslated;
         }
@@ -104,6 +107,7 @@ class Filters {
         var filterLanguage: string = (document.getElementById('filterLanguage') as HTMLSelectElement).value;
         var caseSensitiveFilter: boolean = (document.getElementById('caseSensitiveFilter') as HTMLInputElement).checked;
         var regExp: boolean = (document.getElementById('regularExpression') as HTMLInputElement).checked;
+        var ignoreAccents: boolean = (document.getElementById('ignoreAccents') as HTMLInputElement).checked;
         var filterUntranslated: boolean = (document.getElementById('filterUntranslated') as HTMLInputElement).checked;
         var filterSrcLanguage: string = (document.getElementById('sourceLanguage') as HTMLSelectElement).value;
         if (!filterUntranslated && filterText.length === 0) {
@@ -114,6 +118,7 @@ class Filters {
             filterText: filterText,
             filterLanguage: filterLanguage,
             caseSensitiveFilter: caseSensitiveFilter,
+            ignoreAccents: ignoreAccents,
             filterUntranslated: filterUntranslated,
             regExp: regExp,
             filterSrcLanguage: filterSrcLanguage